@@ -8,6 +8,9 @@ import org.apache.logging.log4j.Logger;
 import org.folio.okapi.common.Config;
 import org.folio.okapi.common.ModuleVersionReporter;
 import org.folio.settings.server.service.TenantService;
+import org.folio.settings.server.storage.ChangeFeed;
+import org.folio.settings.server.storage.PgNotifications;
+import org.folio.settings.server.storage.ReadCache;
 import org.folio.tlib.RouterCreator;
 import org.folio.tlib.api.HealthApi;
 import org.folio.tlib.api.Tenant2Api;
@@ -19,6 +22,9 @@ public class MainVerticle extends VerticleBase {
   @Override
   public Future<?> start() {
     TenantPgPool.setModule("mod-settings");
+    // queries bind their values as parameters, so the statements can be reused
+    TenantPgPool.setDefaultConnectOptions(
+        TenantPgPool.getDefaultConnectOptions().setCachePreparedStatements(true));
     ModuleVersionReporter m = new ModuleVersionReporter("org.folio/mod-settings");
     log.info("Starting {} {} {}", m.getModule(), m.getVersion(), m.getCommitId());
 
@@ -44,6 +50,9 @@ public class MainVerticle extends VerticleBase {
 
   @Override
   public Future<?> stop() {
-    return TenantPgPool.closeAll();
+    return ReadCache.close()
+        .compose(x -> ChangeFeed.close())
+        .compose(x -> PgNotifications.close())
+        .compose(x -> TenantPgPool.closeAll());
   }
 }
@@ -2,8 +2,10 @@ package org.folio.settings.server.main;
 
 import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
+import static java.net.HttpURLConnection.HTTP_GONE;
 import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_PRECON_FAILED;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
@@ -23,7 +25,9 @@ import org.folio.settings.server.service.SettingsService;
 import org.folio.settings.server.service.TenantAddressesService;
 import org.folio.settings.server.service.UploadService;
 import org.folio.settings.server.storage.ForbiddenException;
+import org.folio.settings.server.storage.GoneException;
 import org.folio.settings.server.storage.NotFoundException;
+import org.folio.settings.server.storage.PreconditionFailedException;
 import org.folio.settings.server.storage.UserException;
 import org.folio.tlib.RouterCreator;
 
@@ -63,6 +67,10 @@ public class RouterImpl implements RouterCreator {
       httpResponse(ctx, HTTP_FORBIDDEN, cause.getMessage());
     } else if (cause instanceof NotFoundException) {
       httpResponse(ctx, HTTP_NOT_FOUND, cause.getMessage());
+    } else if (cause instanceof PreconditionFailedException) {
+      httpResponse(ctx, HTTP_PRECON_FAILED, cause.getMessage());
+    } else if (cause instanceof GoneException) {
+      httpResponse(ctx, HTTP_GONE, cause.getMessage());
     } else if (cause instanceof UserException) {
       httpResponse(ctx, HTTP_BAD_REQUEST, cause.getMessage());
     } else if (cause instanceof IllegalArgumentException) {
@@ -102,7 +110,15 @@ public class RouterImpl implements RouterCreator {
     route(routerBuilder, "postSetting", SettingsService::postSetting);
     route(routerBuilder, "getSetting", SettingsService::getSetting);
     route(routerBuilder, "putSetting", SettingsService::updateSetting);
+    route(routerBuilder, "patchSetting", SettingsService::patchSetting);
     route(routerBuilder, "deleteSetting", SettingsService::deleteSetting);
+    route(routerBuilder, "lookupSettings", SettingsService::lookupSettings);
+    route(routerBuilder, "getEffectiveSettings", SettingsService::getEffectiveSettings);
+    route(routerBuilder, "getOwnSettings", SettingsService::getOwnSettings);
+    route(routerBuilder, "getScope", SettingsService::getScope);
+    route(routerBuilder, "getScopeKeys", SettingsService::getScopeKeys);
+    route(routerBuilder, "getChanges", SettingsService::getChanges);
+    route(routerBuilder, "streamSettings", SettingsService::streamSettings);
   }
 
   private void route(RouterBuilder routerBuilder,
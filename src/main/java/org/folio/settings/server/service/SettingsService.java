@@ -1,18 +1,26 @@
 package org.folio.settings.server.service;
 
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.net.HttpURLConnection.HTTP_OK;
 
 import io.vertx.core.Future;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import org.folio.okapi.common.HttpResponse;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.settings.server.data.Entry;
+import org.folio.settings.server.storage.PermissionIndex;
 import org.folio.settings.server.storage.SettingsStorage;
+import org.folio.settings.server.storage.TotalRecords;
 import org.folio.settings.server.storage.UserException;
 import org.folio.settings.server.util.UserUtil;
 import org.folio.tlib.util.TenantUtil;
@@ -20,6 +28,12 @@ import org.folio.tlib.util.TenantUtil;
 public final class SettingsService {
 
   private static final int DEFAULT_LIMIT = 10;
+  private static final int MAX_LOOKUP_KEYS = 1000;
+  private static final int DEFAULT_CHANGES_LIMIT = 1000;
+  private static final int MAX_CHANGES_LIMIT = 10000;
+  private static final int DEFAULT_KEYS_LIMIT = 1000;
+  private static final int MAX_KEYS_LIMIT = 10000;
+  private static final long STREAM_HEARTBEAT_MS = 30000;
 
   private SettingsService() {
   }
@@ -33,11 +47,56 @@ public final class SettingsService {
     if (okapiPermissions == null) {
       throw new UserException("Missing header " + XOkapiHeaders.PERMISSIONS);
     }
-    var permissions = new JsonArray(okapiPermissions);
+    var permissions = PermissionIndex.fromHeader(okapiPermissions);
     var tenant = TenantUtil.tenant(ctx);
     return new SettingsStorage(ctx.vertx(), tenant, currentUserId, permissions);
   }
 
+  static String etag(String version) {
+    return "\"" + version + "\"";
+  }
+
+  /**
+   * Whether If-None-Match matches an ETag; weak comparison.
+   *
+   * @param header If-None-Match header value; null if absent
+   * @param etag current ETag
+   * @return true if the client has the current version
+   */
+  static boolean ifNoneMatch(String header, String etag) {
+    if (header == null) {
+      return false;
+    }
+    for (String part : header.split(",")) {
+      String tag = part.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Versions of If-Match header; strong comparison, so weak tags are left out.
+   *
+   * @param ctx routing context
+   * @return versions; null if header is absent or *
+   */
+  static String[] ifMatch(RoutingContext ctx) {
+    String header = ctx.request().getHeader(HttpHeaders.IF_MATCH);
+    if (header == null || header.trim().equals("*")) {
+      return null;
+    }
+    List<String> versions = new ArrayList<>();
+    for (String part : header.split(",")) {
+      String tag = part.trim();
+      if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+        versions.add(tag.substring(1, tag.length() - 1));
+      }
+    }
+    return versions.toArray(new String[0]);
+  }
+
   /**
    * Write setting to database.
    */
@@ -60,9 +119,16 @@ public final class SettingsService {
     SettingsStorage storage = create(ctx);
     String id = ctx.pathParam("id");
     return storage.getEntry(UUID.fromString(id))
-        .map(entity -> {
+        .map(versioned -> {
+          String etag = etag(versioned.version());
+          ctx.response().putHeader(HttpHeaders.ETAG, etag);
+          if (ifNoneMatch(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            ctx.response().setStatusCode(HTTP_NOT_MODIFIED);
+            ctx.response().end();
+            return null;
+          }
           HttpResponse.responseJson(ctx, HTTP_OK)
-              .end(JsonObject.mapFrom(entity).encode());
+              .end(JsonObject.mapFrom(versioned.entry()).encode());
           return null;
         });
   }
@@ -78,8 +144,25 @@ public final class SettingsService {
       return Future.failedFuture(new UserException("id mismatch"));
     }
     var settingsStorage = create(ctx);
-    return settingsStorage.updateEntry(entry)
-        .map(entity -> {
+    return settingsStorage.updateEntry(entry, ifMatch(ctx))
+        .map(version -> {
+          ctx.response().putHeader(HttpHeaders.ETAG, etag(version));
+          ctx.response().setStatusCode(HTTP_NO_CONTENT);
+          ctx.response().end();
+          return null;
+        });
+  }
+
+  /**
+   * Apply JSON Merge Patch to setting in database.
+   */
+  public static Future<Void> patchSetting(RoutingContext ctx) {
+    var patch = ctx.body().asJsonObject();
+    var id = UUID.fromString(ctx.pathParam("id"));
+    var settingsStorage = create(ctx);
+    return settingsStorage.patchEntry(id, patch, ifMatch(ctx))
+        .map(version -> {
+          ctx.response().putHeader(HttpHeaders.ETAG, etag(version));
           ctx.response().setStatusCode(HTTP_NO_CONTENT);
           ctx.response().end();
           return null;
@@ -92,7 +175,7 @@ public final class SettingsService {
   public static Future<Void> deleteSetting(RoutingContext ctx) {
     SettingsStorage configStorage = create(ctx);
     String id = ctx.pathParam("id");
-    return configStorage.deleteEntry(UUID.fromString(id))
+    return configStorage.deleteEntry(UUID.fromString(id), ifMatch(ctx))
         .map(res -> {
           ctx.response().setStatusCode(HTTP_NO_CONTENT);
           ctx.response().end();
@@ -111,6 +194,233 @@ public final class SettingsService {
     int limit = tmp.isEmpty() ? DEFAULT_LIMIT : Integer.parseInt(tmp.get(0));
     tmp = ctx.queryParam("offset");
     int offset = tmp.isEmpty() ? 0 : Integer.parseInt(tmp.get(0));
-    return storage.getEntries(ctx.response(), query, offset, limit);
+    tmp = ctx.queryParam("after");
+    String after = tmp.isEmpty() ? null : tmp.get(0);
+    tmp = ctx.queryParam("totalRecords");
+    TotalRecords totalRecords = TotalRecords.fromParameter(tmp.isEmpty() ? null : tmp.get(0));
+    return storage.getEntries(ctx.response(), query, offset, limit, after, totalRecords);
+  }
+
+  /**
+   * Return settings of the current user for keys, falling back to settings without user.
+   */
+  public static Future<Void> getEffectiveSettings(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    List<String> tmp = ctx.queryParam("scope");
+    if (tmp.isEmpty()) {
+      return Future.failedFuture(new UserException("Missing scope"));
+    }
+    String scope = tmp.get(0);
+    List<String> keys = ctx.queryParam("key");
+    if (keys.isEmpty()) {
+      return Future.failedFuture(new UserException("Missing key"));
+    }
+    if (keys.size() > MAX_LOOKUP_KEYS) {
+      return Future.failedFuture(new UserException("At most " + MAX_LOOKUP_KEYS
+          + " keys may be looked up"));
+    }
+    return storage.getEffectiveEntries(scope, keys)
+        .map(entries -> {
+          JsonArray items = new JsonArray();
+          entries.forEach(entry -> items.add(JsonObject.mapFrom(entry)));
+          HttpResponse.responseJson(ctx, HTTP_OK)
+              .end(new JsonObject()
+                  .put("items", items)
+                  .put("resultInfo", new JsonObject()
+                      .put("totalRecords", items.size())
+                      .put("diagnostics", new JsonArray()))
+                  .encode());
+          return null;
+        });
+  }
+
+  /**
+   * Return settings of the current user.
+   */
+  public static Future<Void> getOwnSettings(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    if (UserUtil.getUserId(ctx) == null) {
+      return Future.failedFuture(new UserException("Missing header " + XOkapiHeaders.USER_ID));
+    }
+    return storage.getOwnEntries()
+        .map(entries -> {
+          JsonArray items = new JsonArray();
+          entries.forEach(entry -> items.add(JsonObject.mapFrom(entry)));
+          HttpResponse.responseJson(ctx, HTTP_OK)
+              .end(new JsonObject()
+                  .put("items", items)
+                  .put("resultInfo", new JsonObject()
+                      .put("totalRecords", items.size())
+                      .put("diagnostics", new JsonArray()))
+                  .encode());
+          return null;
+        });
+  }
+
+  /**
+   * Return values of settings in a scope; 304 if If-None-Match has the current version.
+   */
+  public static Future<Void> getScope(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    String scope = ctx.pathParam("scope");
+    // version is read first, so the values are at least as new as the ETag
+    return storage.getScopeVersion(scope)
+        .compose(version -> {
+          String etag = etag(version);
+          ctx.response().putHeader(HttpHeaders.ETAG, etag);
+          if (ifNoneMatch(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            ctx.response().setStatusCode(HTTP_NOT_MODIFIED);
+            ctx.response().end();
+            return Future.succeededFuture();
+          }
+          return storage.getScope(scope)
+              .map(values -> {
+                HttpResponse.responseJson(ctx, HTTP_OK).end(values.encode());
+                return null;
+              });
+        });
+  }
+
+  /**
+   * Return keys of settings in a scope, or number of keys per segment, without values.
+   */
+  public static Future<Void> getScopeKeys(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    String scope = ctx.pathParam("scope");
+    List<String> tmp = ctx.queryParam("prefix");
+    String prefix = tmp.isEmpty() ? "" : tmp.get(0);
+    tmp = ctx.queryParam("after");
+    String after = tmp.isEmpty() ? null : tmp.get(0);
+    tmp = ctx.queryParam("segments");
+    boolean segments = !tmp.isEmpty() && Boolean.parseBoolean(tmp.get(0));
+    tmp = ctx.queryParam("limit");
+    int limit = tmp.isEmpty() ? DEFAULT_KEYS_LIMIT : Integer.parseInt(tmp.get(0));
+    if (limit < 1 || limit > MAX_KEYS_LIMIT) {
+      return Future.failedFuture(new UserException("limit must be between 1 and "
+          + MAX_KEYS_LIMIT));
+    }
+    return storage.getKeys(scope, prefix, after, segments, limit)
+        .map(result -> {
+          HttpResponse.responseJson(ctx, HTTP_OK)
+              .end(new JsonObject()
+                  .put("scope", scope)
+                  .put("prefix", prefix)
+                  .put(segments ? "segments" : "keys", result)
+                  .encode());
+          return null;
+        });
+  }
+
+  /**
+   * Return changes of settings after a sequence number.
+   */
+  public static Future<Void> getChanges(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    List<String> tmp = ctx.queryParam("since");
+    Long since = tmp.isEmpty() ? null : Long.parseLong(tmp.get(0));
+    tmp = ctx.queryParam("limit");
+    int limit = tmp.isEmpty() ? DEFAULT_CHANGES_LIMIT : Integer.parseInt(tmp.get(0));
+    if (limit < 1 || limit > MAX_CHANGES_LIMIT) {
+      return Future.failedFuture(new UserException("limit must be between 1 and "
+          + MAX_CHANGES_LIMIT));
+    }
+    return storage.getChanges(since, limit)
+        .map(changes -> {
+          HttpResponse.responseJson(ctx, HTTP_OK)
+              .end(new JsonObject()
+                  .put("items", changes.items())
+                  .put("last", changes.last())
+                  .encode());
+          return null;
+        });
+  }
+
+  /**
+   * Stream changes of settings as server-sent events.
+   */
+  public static Future<Void> streamSettings(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    Set<String> scopes = new HashSet<>(ctx.queryParam("scope"));
+    // headers are set before changes may arrive; an error response replaces them
+    HttpServerResponse response = ctx.response()
+        .setChunked(true)
+        .putHeader(HttpHeaders.CONTENT_TYPE, "text/event-stream")
+        .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    return storage.subscribeChanges(scopes, change -> {
+      if (response.closed()) {
+        return;
+      }
+      if (response.writeQueueFull()) {
+        // client can catch up with GET /settings/changes when it reconnects
+        response.reset();
+        return;
+      }
+      response.write("id: " + change.getLong("seq") + "\nevent: change\ndata: "
+          + change.encode() + "\n\n");
+    }).map(unsubscribe -> {
+      if (response.closed()) {
+        unsubscribe.run();
+        return null;
+      }
+      long timer = ctx.vertx().setPeriodic(STREAM_HEARTBEAT_MS, id -> {
+        if (!response.closed()) {
+          response.write(":\n\n");
+        }
+      });
+      response.closeHandler(x -> {
+        ctx.vertx().cancelTimer(timer);
+        unsubscribe.run();
+      });
+      response.write(":\n\n");
+      return null;
+    });
+  }
+
+  /**
+   * Look up many settings by scope, key and userId in one request.
+   */
+  public static Future<Void> lookupSettings(RoutingContext ctx) {
+    SettingsStorage storage = create(ctx);
+    JsonArray keys = ctx.body().asJsonObject().getJsonArray("keys");
+    if (keys == null) {
+      return Future.failedFuture(new UserException("Missing keys"));
+    }
+    if (keys.size() > MAX_LOOKUP_KEYS) {
+      return Future.failedFuture(new UserException("At most " + MAX_LOOKUP_KEYS
+          + " keys may be looked up"));
+    }
+    List<Entry> entries = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      if (!(keys.getValue(i) instanceof JsonObject key)
+          || !(key.getValue("scope") instanceof String scope)
+          || !(key.getValue("key") instanceof String k)) {
+        return Future.failedFuture(new UserException("Each key must have scope and key"));
+      }
+      Entry entry = new Entry();
+      entry.setScope(scope);
+      entry.setKey(k);
+      Object userId = key.getValue("userId");
+      if (userId != null) {
+        try {
+          entry.setUserId(UUID.fromString(userId.toString()));
+        } catch (IllegalArgumentException e) {
+          return Future.failedFuture(new UserException("Invalid userId " + userId));
+        }
+      }
+      entries.add(entry);
+    }
+    return storage.lookupEntries(entries)
+        .map(found -> {
+          JsonArray items = new JsonArray();
+          found.forEach(entry -> items.add(JsonObject.mapFrom(entry)));
+          HttpResponse.responseJson(ctx, HTTP_OK)
+              .end(new JsonObject()
+                  .put("items", items)
+                  .put("resultInfo", new JsonObject()
+                      .put("totalRecords", items.size())
+                      .put("diagnostics", new JsonArray()))
+                  .encode());
+          return null;
+        });
   }
 }
@@ -19,6 +19,7 @@ import org.folio.okapi.common.HttpResponse;
 import org.folio.settings.server.data.Metadata;
 import org.folio.settings.server.data.TenantAddress;
 import org.folio.settings.server.storage.TenantAddressesStorage;
+import org.folio.settings.server.storage.TotalRecords;
 import org.folio.settings.server.util.TimeUtil;
 import org.folio.settings.server.util.UserUtil;
 import org.folio.tlib.util.TenantUtil;
@@ -43,8 +44,10 @@ public final class TenantAddressesService {
     var offset = getIntQuery(ctx, "offset", DEFAULT_OFFSET);
     var tmp = ctx.queryParam("query");
     var query = tmp.isEmpty() ? null : tmp.getFirst();
+    tmp = ctx.queryParam("totalRecords");
+    var totalRecords = TotalRecords.fromParameter(tmp.isEmpty() ? null : tmp.getFirst());
     return new TenantAddressesStorage(ctx.vertx(), TenantUtil.tenant(ctx))
-        .getTenantAddresses(ctx.response(), query, offset, limit, objectMapper);
+        .getTenantAddresses(ctx.response(), query, offset, limit, totalRecords, objectMapper);
   }
 
   /**
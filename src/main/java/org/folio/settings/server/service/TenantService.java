@@ -2,6 +2,8 @@ package org.folio.settings.server.service;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import org.folio.settings.server.storage.BaseUrlStorage;
 import org.folio.settings.server.storage.LocaleStorage;
 import org.folio.settings.server.storage.SettingsStorage;
@@ -32,6 +34,37 @@ public class TenantService implements TenantInitHooks {
     return new BaseUrlStorage(vertx, tenant).init(tenantInitConf, version)
         .compose(x -> new LocaleStorage(vertx, tenant).init(tenantInitConf, version))
         .compose(x -> new TenantAddressesStorage(vertx, tenant).init(tenantInitConf, version))
-        .compose(x -> new SettingsStorage(vertx, tenant, null, null).init());
+        .compose(x -> new SettingsStorage(vertx, tenant, null, null)
+            .init(booleanParameter(tenantInitConf, "valueIndex")))
+        .compose(x -> {
+          Boolean trigramIndex = booleanParameter(tenantInitConf, "trigramIndex");
+          if (trigramIndex == null) {
+            return Future.succeededFuture();
+          }
+          return new SettingsStorage(vertx, tenant, null, null).initTrigramIndex(trigramIndex)
+              .compose(y -> new TenantAddressesStorage(vertx, tenant)
+                  .initTrigramIndex(trigramIndex));
+        });
+  }
+
+  /**
+   * Get boolean tenant parameter.
+   *
+   * @param tenantInitConf tenant init configuration
+   * @param key parameter key
+   * @return parameter value; null if not given
+   */
+  static Boolean booleanParameter(TenantInitConf tenantInitConf, String key) {
+    JsonArray parameters = tenantInitConf.tenantAttributes().getJsonArray("parameters");
+    if (parameters == null) {
+      return null;
+    }
+    for (int i = 0; i < parameters.size(); i++) {
+      JsonObject parameter = parameters.getJsonObject(i);
+      if (key.equals(parameter.getString("key"))) {
+        return Boolean.parseBoolean(parameter.getString("value"));
+      }
+    }
+    return null;
   }
 }
@@ -7,8 +7,11 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.parsetools.JsonEventType;
 import io.vertx.core.parsetools.JsonParser;
 import io.vertx.ext.web.RoutingContext;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import org.folio.okapi.common.HttpResponse;
 import org.folio.settings.server.data.Entry;
 import org.folio.settings.server.storage.SettingsStorage;
@@ -16,6 +19,9 @@ import org.folio.settings.server.storage.UserException;
 
 public final class UploadService {
 
+  private static final int DEFAULT_BATCH_SIZE = 500;
+  private static final int MAX_BATCH_SIZE = 10000;
+
   private UploadService() { }
 
   /**
@@ -27,52 +33,50 @@ public final class UploadService {
       if (contentType == null || !contentType.startsWith("application/json")) {
         throw new UserException("Content-Type must be application/json");
       }
+      List<String> tmp = ctx.queryParam("batchSize");
+      int batchSize = tmp.isEmpty() ? DEFAULT_BATCH_SIZE : Integer.parseInt(tmp.get(0));
+      if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+        throw new UserException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+      }
+      tmp = ctx.queryParam("mode");
+      String mode = tmp.isEmpty() ? "batch" : tmp.get(0);
+      if (!"batch".equals(mode) && !"copy".equals(mode)) {
+        throw new UserException("mode must be batch or copy");
+      }
       SettingsStorage storage = SettingsService.create(ctx);
       JsonParser jsonParser = JsonParser.newParser(ctx.request());
       JsonObject uploadResponse = new JsonObject()
           .put("inserted", 0)
-          .put("updated", 0);
+          .put("updated", 0)
+          .put("unchanged", 0);
 
-      Promise<Void> promise = Promise.promise();
-      AtomicInteger pending = new AtomicInteger();
-      AtomicBoolean ended = new AtomicBoolean();
-      jsonParser.handler(event -> {
-        if (event.type().equals(JsonEventType.START_ARRAY)) {
-          jsonParser.objectValueMode();
-        } else if (event.type().equals(JsonEventType.END_ARRAY)) {
-          jsonParser.objectEventMode();
-        } else if (event.type().equals(JsonEventType.VALUE)) {
-          JsonObject obj = event.objectValue();
-          Entry entry = obj.mapTo(Entry.class);
-          if (pending.incrementAndGet() >= 5) {
-            jsonParser.pause();
-          }
-          storage.upsertEntry(entry)
-              .map(b -> {
-                String key = Boolean.TRUE.equals(b) ? "inserted" : "updated";
-                uploadResponse.put(key, uploadResponse.getInteger(key) + 1);
-                return null;
-              })
-              .onFailure(promise::tryFail)
-              .onComplete(x -> {
-                if (pending.decrementAndGet() <= 2) {
-                  jsonParser.resume();
-                }
-                if (ended.get() && pending.get() == 0) {
-                  promise.tryComplete();
-                }
-              });
-        }
-      });
-      jsonParser.endHandler(x -> {
-        ended.set(true);
-        if (pending.get() == 0) {
-          promise.tryComplete();
-        }
-      });
-      // turn JSON parse errors to user errors : bad request body
-      jsonParser.exceptionHandler(x -> promise.tryFail(new UserException(x.getMessage())));
-      return promise.future().map(x -> {
+      Future<Void> future;
+      if ("copy".equals(mode)) {
+        // hold the request body until the staging table is ready
+        ctx.request().pause();
+        future = storage.bulkUpsert(sink -> {
+          Future<Void> parsed = parseEntries(jsonParser, batchSize, sink::write);
+          ctx.request().resume();
+          return parsed;
+        }).<Void>map(counts -> {
+          uploadResponse.put("inserted", counts.inserted());
+          uploadResponse.put("updated", counts.updated());
+          uploadResponse.put("unchanged", counts.unchanged());
+          return null;
+        });
+      } else {
+        future = parseEntries(jsonParser, batchSize, entries -> storage.upsertEntries(entries)
+            .<Void>map(counts -> {
+              uploadResponse.put("inserted", uploadResponse.getInteger("inserted")
+                  + counts.inserted());
+              uploadResponse.put("updated", uploadResponse.getInteger("updated")
+                  + counts.updated());
+              uploadResponse.put("unchanged", uploadResponse.getInteger("unchanged")
+                  + counts.unchanged());
+              return null;
+            }));
+      }
+      return future.map(x -> {
         HttpResponse.responseJson(ctx, 200).end(uploadResponse.encode());
         return null;
       });
@@ -80,4 +84,59 @@ public final class UploadService {
       return Future.failedFuture(e);
     }
   }
+
+  /**
+   * Parse JSON array of entries and pass them on in batches.
+   *
+   * <p>Batches are written in order; parsing continues while one batch is written.
+   *
+   * @param jsonParser parser for request body
+   * @param batchSize maximum number of entries in each batch
+   * @param writer writes a batch
+   * @return async result; succeeds when all batches are written
+   */
+  private static Future<Void> parseEntries(JsonParser jsonParser, int batchSize,
+      Function<List<Entry>, Future<Void>> writer) {
+    Promise<Void> promise = Promise.promise();
+    AtomicInteger pending = new AtomicInteger();
+    AtomicReference<Future<Void>> last = new AtomicReference<>(Future.succeededFuture());
+    List<Entry> batch = new ArrayList<>();
+    Runnable flush = () -> {
+      List<Entry> entries = new ArrayList<>(batch);
+      batch.clear();
+      if (pending.incrementAndGet() >= 2) {
+        jsonParser.pause();
+      }
+      last.set(last.get()
+          .compose(x -> writer.apply(entries))
+          .onFailure(promise::tryFail)
+          .onComplete(x -> {
+            if (pending.decrementAndGet() < 2) {
+              jsonParser.resume();
+            }
+          }));
+    };
+    jsonParser.handler(event -> {
+      if (event.type().equals(JsonEventType.START_ARRAY)) {
+        jsonParser.objectValueMode();
+      } else if (event.type().equals(JsonEventType.END_ARRAY)) {
+        jsonParser.objectEventMode();
+      } else if (event.type().equals(JsonEventType.VALUE)) {
+        JsonObject obj = event.objectValue();
+        batch.add(obj.mapTo(Entry.class));
+        if (batch.size() >= batchSize) {
+          flush.run();
+        }
+      }
+    });
+    jsonParser.endHandler(x -> {
+      if (!batch.isEmpty()) {
+        flush.run();
+      }
+      last.get().onSuccess(y -> promise.tryComplete());
+    });
+    // turn JSON parse errors to user errors : bad request body
+    jsonParser.exceptionHandler(x -> promise.tryFail(new UserException(x.getMessage())));
+    return promise.future();
+  }
 }
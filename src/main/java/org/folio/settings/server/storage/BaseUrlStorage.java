@@ -17,6 +17,8 @@ public class BaseUrlStorage {
 
   private static final SemVer SEM_VER_1_3_0 = new SemVer("1.3.0");
 
+  private final Vertx vertx;
+
   private final TenantPgPool pool;
 
   private final String table;
@@ -25,6 +27,7 @@ public class BaseUrlStorage {
    * Database storage for baseUrl.
    */
   public BaseUrlStorage(Vertx vertx, String tenant) {
+    this.vertx = vertx;
     this.pool = TenantPgPool.pool(vertx, tenant);
     this.table = pool.getSchema() + ".baseurl";
   }
@@ -34,7 +37,9 @@ public class BaseUrlStorage {
    */
   public Future<Void> init(TenantInitConf tenantInitConf, String oldVersion) {
     return initTable()
-        .compose(x -> migrateData(tenantInitConf, oldVersion));
+        .compose(x -> migrateData(tenantInitConf, oldVersion))
+        // a purged and re-created tenant may still have cached values
+        .onComplete(x -> ReadCache.invalidate(table));
   }
 
   private Future<Void> initTable() {
@@ -75,7 +80,8 @@ public class BaseUrlStorage {
         CREATE OR REPLACE TRIGGER baseurl_singleton BEFORE DELETE OR INSERT ON %s
           EXECUTE FUNCTION %s_singleton()
         """.formatted(table, table)
-        ));
+        ))
+        .compose(x -> pool.execute(ReadCache.notifySql(pool.getSchema(), "baseurl")));
   }
 
   private Future<Void> migrateData(TenantInitConf tenantInitConf, String oldVersion) {
@@ -131,8 +137,14 @@ public class BaseUrlStorage {
 
   /**
    * Get baseUrl.
+   *
+   * <p>Served from {@link ReadCache}; the table notifies on change.
    */
   public Future<String> getBaseUrl() {
+    return ReadCache.get(vertx, table, "", this::getBaseUrlFromTable);
+  }
+
+  private Future<String> getBaseUrlFromTable() {
     return pool.query("SELECT baseurl FROM " + table)
         .execute()
         .map(rowSet -> rowSet.iterator().next().getString("baseurl"));
@@ -144,6 +156,7 @@ public class BaseUrlStorage {
   public Future<Void> updateBaseUrl(String baseUrl) {
     return pool.preparedQuery("UPDATE " + table + " SET baseurl = $1")
         .execute(Tuple.of(baseUrl))
+        .onComplete(x -> ReadCache.invalidate(table))
         .mapEmpty();
   }
 }
@@ -0,0 +1,125 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Collects single key lookups that arrive within a short window and resolves
+ * them with one call of a multi-key loader.
+ *
+ * <p>A batch is dispatched when the window has passed since its first key or when
+ * it holds the maximum number of keys. The loader of the first lookup in a batch
+ * loads all of it, so lookups sharing a batcher must have equivalent loaders.
+ * Waiters get the result on their own Vert.x context; lookups outside a Vert.x
+ * context are not batched.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class Batcher<K, V> {
+
+  private record Waiter<T>(Promise<T> promise, Context context) {
+    void handle(AsyncResult<T> ar) {
+      context.runOnContext(x -> promise.handle(ar));
+    }
+  }
+
+  private record Batch<K, V>(Map<K, List<Waiter<V>>> waiters,
+      Function<List<K>, Future<Map<K, V>>> loader) {}
+
+  private final long windowMs;
+  private final int maxSize;
+  private Map<K, List<Waiter<V>>> pending = new LinkedHashMap<>();
+  private Function<List<K>, Future<Map<K, V>>> pendingLoader;
+  private Vertx timerVertx;
+  private long timerId = -1;
+
+  /**
+   * Create batcher.
+   *
+   * @param windowMs milliseconds to wait for more keys; at least 1
+   * @param maxSize maximum number of distinct keys in a batch
+   */
+  public Batcher(long windowMs, int maxSize) {
+    this.windowMs = Math.max(1, windowMs);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Load value for key.
+   *
+   * @param key key to look up
+   * @param loader loads values for keys; keys without value are absent from the map
+   * @return async result with value; null if not found
+   */
+  public Future<V> load(K key, Function<List<K>, Future<Map<K, V>>> loader) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return dispatch(new Batch<>(Map.of(), loader), List.of(key)).map(m -> m.get(key));
+    }
+    Promise<V> promise = Promise.promise();
+    Batch<K, V> batch = null;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        pendingLoader = loader;
+      }
+      pending.computeIfAbsent(key, k -> new ArrayList<>()).add(new Waiter<>(promise, context));
+      if (pending.size() >= maxSize) {
+        batch = takePending();
+      } else if (timerId == -1) {
+        timerVertx = context.owner();
+        timerId = timerVertx.setTimer(windowMs, this::timeout);
+      }
+    }
+    if (batch != null) {
+      dispatch(batch, new ArrayList<>(batch.waiters().keySet()));
+    }
+    return promise.future();
+  }
+
+  private void timeout(long id) {
+    Batch<K, V> batch;
+    synchronized (this) {
+      if (id != timerId) {
+        return;
+      }
+      timerId = -1;
+      batch = takePending();
+    }
+    dispatch(batch, new ArrayList<>(batch.waiters().keySet()));
+  }
+
+  private Batch<K, V> takePending() {
+    if (timerId != -1) {
+      timerVertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+    Batch<K, V> batch = new Batch<>(pending, pendingLoader);
+    pending = new LinkedHashMap<>();
+    pendingLoader = null;
+    return batch;
+  }
+
+  private Future<Map<K, V>> dispatch(Batch<K, V> batch, List<K> keys) {
+    Future<Map<K, V>> future;
+    try {
+      future = batch.loader().apply(keys);
+    } catch (Exception e) {
+      future = Future.failedFuture(e);
+    }
+    return future.onComplete(ar -> batch.waiters().forEach((key, waiters) -> {
+      AsyncResult<V> result = ar.succeeded()
+          ? Future.succeededFuture(ar.result().get(key))
+          : Future.failedFuture(ar.cause());
+      waiters.forEach(waiter -> waiter.handle(result));
+    }));
+  }
+}
@@ -0,0 +1,208 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Passes changes of settings on to subscribers, such as server-sent event streams.
+ *
+ * <p>The change log trigger sends a notification on {@link #CHANNEL} with the schema
+ * as payload once per statement. For a tenant with subscribers, the new changes are
+ * then read from the change log with one query and handed to every subscriber of the
+ * tenant. So each module instance has one listening connection, and one query per
+ * write and tenant, however many subscribers there are.
+ */
+public final class ChangeFeed {
+
+  private static final Logger log = LogManager.getLogger(ChangeFeed.class);
+
+  static final String CHANNEL = "mod_settings_changes";
+
+  private static final int FETCH_LIMIT = 1000;
+
+  private record Subscriber(Context context, Consumer<JsonObject> handler) {
+    void handle(List<JsonObject> changes) {
+      context.runOnContext(x -> changes.forEach(handler));
+    }
+  }
+
+  private static final class Hub {
+    private final TenantPgPool pool;
+    private final String changesTable;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Promise<Void> ready = Promise.promise();
+    private long last = -1;  // not known yet
+    private boolean fetching;
+    private boolean again;
+
+    Hub(TenantPgPool pool, String changesTable) {
+      this.pool = pool;
+      this.changesTable = changesTable;
+    }
+  }
+
+  private static final Map<String, Hub> hubs = new ConcurrentHashMap<>();
+
+  private ChangeFeed() {
+  }
+
+  /**
+   * Subscribe to changes of a tenant from now on.
+   *
+   * <p>Must be called on a Vert.x context; the handler is called on that context
+   * with each change in order.
+   *
+   * @param vertx Vert.x instance
+   * @param pool pool of tenant
+   * @param changesTable schema qualified change log table
+   * @param handler gets changes as returned by GET /settings/changes
+   * @return async result with action that unsubscribes; succeeds when changes are
+   *     passed on
+   */
+  static Future<Runnable> subscribe(Vertx vertx, TenantPgPool pool, String changesTable,
+      Consumer<JsonObject> handler) {
+    PgNotifications.listen(vertx, CHANNEL, ChangeFeed::notified, ChangeFeed::fetchAll);
+    Context context = vertx.getOrCreateContext();
+    Subscriber subscriber = new Subscriber(context, handler);
+    String schema = pool.getSchema();
+    Hub hub;
+    boolean created;
+    synchronized (ChangeFeed.class) {
+      hub = hubs.get(schema);
+      created = hub == null;
+      if (created) {
+        hub = new Hub(pool, changesTable);
+        hubs.put(schema, hub);
+      }
+      hub.subscribers.add(subscriber);
+    }
+    Hub h = hub;
+    Runnable unsubscribe = () -> {
+      synchronized (ChangeFeed.class) {
+        h.subscribers.remove(subscriber);
+        if (h.subscribers.isEmpty()) {
+          hubs.remove(schema, h);
+        }
+      }
+    };
+    if (created) {
+      fetch(hub);
+    }
+    Promise<Runnable> promise = Promise.promise();
+    hub.ready.future().onComplete(ar -> context.runOnContext(x -> {
+      if (ar.failed()) {
+        unsubscribe.run();
+        promise.fail(ar.cause());
+      } else {
+        promise.complete(unsubscribe);
+      }
+    }));
+    return promise.future();
+  }
+
+  static void notified(String schema) {
+    Hub hub = hubs.get(schema);
+    if (hub != null) {
+      fetch(hub);
+    }
+  }
+
+  static void fetchAll() {
+    hubs.values().forEach(ChangeFeed::fetch);
+  }
+
+  private static void fetch(Hub hub) {
+    long last;
+    synchronized (hub) {
+      if (hub.fetching) {
+        hub.again = true;
+        return;
+      }
+      hub.fetching = true;
+      last = hub.last;
+    }
+    Future<Boolean> future = last == -1 ? fetchLast(hub) : fetchChanges(hub, last);
+    future.onComplete(ar -> {
+      boolean again;
+      synchronized (hub) {
+        hub.fetching = false;
+        again = hub.again || (ar.succeeded() && ar.result());
+        hub.again = false;
+      }
+      if (ar.failed()) {
+        log.warn("Reading {} failed: {}", hub.changesTable, ar.cause().getMessage(), ar.cause());
+        if (last == -1) {
+          // the subscribers fail; a new subscriber starts over with a new hub
+          synchronized (ChangeFeed.class) {
+            hubs.remove(hub.pool.getSchema(), hub);
+          }
+          hub.ready.tryFail(ar.cause());
+          return;
+        }
+      }
+      if (again && !hub.subscribers.isEmpty()) {
+        fetch(hub);
+      }
+    });
+  }
+
+  private static Future<Boolean> fetchLast(Hub hub) {
+    return hub.pool.preparedQuery("SELECT max(seq) AS last FROM " + hub.changesTable)
+        .execute()
+        .map(rowSet -> {
+          Long last = rowSet.iterator().next().getLong("last");
+          synchronized (hub) {
+            hub.last = last == null ? 0 : last;
+          }
+          hub.ready.tryComplete();
+          return false;
+        });
+  }
+
+  /**
+   * Read changes after last and pass them on.
+   *
+   * @return async result with true if there may be more changes to read
+   */
+  private static Future<Boolean> fetchChanges(Hub hub, long last) {
+    return hub.pool.preparedQuery("SELECT seq, op, id, scope, key, userId FROM "
+            + hub.changesTable + " WHERE seq > $1 ORDER BY seq LIMIT $2")
+        .execute(Tuple.of(last, FETCH_LIMIT))
+        .map(rowSet -> {
+          List<JsonObject> changes = new ArrayList<>();
+          for (Row row : rowSet) {
+            changes.add(SettingsStorage.changeFromRow(row));
+          }
+          if (changes.isEmpty()) {
+            return false;
+          }
+          synchronized (hub) {
+            hub.last = changes.get(changes.size() - 1).getLong("seq");
+          }
+          hub.subscribers.forEach(subscriber -> subscriber.handle(changes));
+          return changes.size() == FETCH_LIMIT;
+        });
+  }
+
+  /**
+   * Drop all subscribers.
+   */
+  public static Future<Void> close() {
+    hubs.clear();
+    return Future.succeededFuture();
+  }
+}
@@ -0,0 +1,104 @@
+package org.folio.settings.server.storage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlQuery;
+
+/**
+ * Memoized CQL to SQL translation for a fixed CQL definition.
+ *
+ * <p>The SQL does not depend on tenant or permissions, so one instance is shared
+ * by all requests for a table. Recently used queries are kept in a bounded LRU.
+ */
+public final class CqlCache {
+
+  private static final Logger log = LogManager.getLogger(CqlCache.class);
+
+  private static final int DEFAULT_SIZE = 1000;
+
+  /**
+   * SQL translation of a CQL query.
+   *
+   * @param where WHERE clause; null if query matches all records
+   * @param orderBy ORDER BY clause; null if query has no sortBy
+   */
+  public record Translation(String where, String orderBy) {}
+
+  private final PgCqlDefinition definition;
+  private final String jsonbColumn;
+  private final Map<String, Translation> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Create cache for a definition.
+   *
+   * @param definition CQL definition; must not be modified afterwards
+   */
+  public CqlCache(PgCqlDefinition definition) {
+    this(definition, null, DEFAULT_SIZE);
+  }
+
+  /**
+   * Create cache for a definition with terms on paths inside a JSONB column.
+   *
+   * @param definition CQL definition; must not be modified afterwards
+   * @param jsonbColumn JSONB column, see {@link JsonbCql}
+   */
+  public CqlCache(PgCqlDefinition definition, String jsonbColumn) {
+    this(definition, jsonbColumn, DEFAULT_SIZE);
+  }
+
+  CqlCache(PgCqlDefinition definition, int maxSize) {
+    this(definition, null, maxSize);
+  }
+
+  CqlCache(PgCqlDefinition definition, String jsonbColumn, int maxSize) {
+    this.definition = definition;
+    this.jsonbColumn = jsonbColumn;
+    this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Translation> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  /**
+   * Translate CQL query to SQL.
+   *
+   * @param cql CQL query; null for all records
+   * @return translation
+   * @throws IllegalArgumentException for invalid CQL (not cached)
+   */
+  public Translation translate(String cql) {
+    Translation translation = cache.get(cql);
+    if (translation != null) {
+      hits.incrementAndGet();
+      return translation;
+    }
+    misses.incrementAndGet();
+    if (jsonbColumn == null) {
+      PgCqlQuery pgCqlQuery = definition.parse(cql);
+      translation = new Translation(pgCqlQuery.getWhereClause(), pgCqlQuery.getOrderByClause());
+    } else {
+      translation = JsonbCql.translate(definition, jsonbColumn, cql);
+    }
+    cache.put(cql, translation);
+    log.debug("CQL cache miss: {} hits={} misses={}", cql, hits.get(), misses.get());
+    return translation;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+}
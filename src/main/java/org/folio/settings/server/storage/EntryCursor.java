@@ -0,0 +1,91 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position in the settings table: the (scope, key, userId, id) of the last
+ * entry returned. Encoded as an opaque token for the after parameter.
+ */
+record EntryCursor(String scope, String key, UUID userId, UUID id) {
+
+  /**
+   * Sort order that the cursor seeks on. Global entries (userId NULL) come first.
+   */
+  static final String ORDER_BY = "scope, key, userid NULLS FIRST, id";
+
+  static EntryCursor fromRow(Row row) {
+    return new EntryCursor(row.getString("scope"), row.getString("key"),
+        row.getUUID("userid"), row.getUUID("id"));
+  }
+
+  /**
+   * Encode as opaque token.
+   *
+   * @return URL safe token
+   */
+  String encode() {
+    var ar = new JsonArray()
+        .add(scope)
+        .add(key)
+        .add(userId == null ? null : userId.toString())
+        .add(id.toString());
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(ar.encode().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decode token as returned by {@link #encode()}.
+   *
+   * @param token token; empty for first page
+   * @return cursor; null if token is empty
+   * @throws UserException if token is invalid
+   */
+  static EntryCursor decode(String token) {
+    if (token.isEmpty()) {
+      return null;
+    }
+    try {
+      var ar = new JsonArray(new String(Base64.getUrlDecoder().decode(token),
+          StandardCharsets.UTF_8));
+      String userId = ar.getString(2);
+      return new EntryCursor(ar.getString(0), ar.getString(1),
+          userId == null ? null : UUID.fromString(userId),
+          UUID.fromString(ar.getString(3)));
+    } catch (RuntimeException e) {
+      throw new UserException("Invalid after token: " + token);
+    }
+  }
+
+  /**
+   * SQL condition selecting entries strictly after this cursor in {@link #ORDER_BY} order.
+   *
+   * <p>The leading row comparison on (scope, key) allows an index range scan; the
+   * remaining condition orders within the same scope and key.
+   *
+   * @param args arguments to which the cursor values are appended
+   * @return SQL condition
+   */
+  String seekClause(Tuple args) {
+    int scopeArg = args.size() + 1;
+    int keyArg = scopeArg + 1;
+    args.addString(scope);
+    args.addString(key);
+    String sameScopeKey;
+    if (userId == null) {
+      args.addUUID(id);
+      sameScopeKey = "userid IS NOT NULL OR id > $" + (keyArg + 1);
+    } else {
+      args.addUUID(userId);
+      args.addUUID(id);
+      sameScopeKey = "userid > $" + (keyArg + 1)
+          + " OR (userid = $" + (keyArg + 1) + " AND id > $" + (keyArg + 2) + ")";
+    }
+    return "(scope, key) >= ($" + scopeArg + ", $" + keyArg + ")"
+        + " AND ((scope, key) > ($" + scopeArg + ", $" + keyArg + ") OR " + sameScopeKey + ")";
+  }
+}
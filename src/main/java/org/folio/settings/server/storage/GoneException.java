@@ -0,0 +1,7 @@
+package org.folio.settings.server.storage;
+
+public class GoneException extends RuntimeException {
+  public GoneException(String message) {
+    super(message);
+  }
+}
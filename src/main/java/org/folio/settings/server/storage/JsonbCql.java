@@ -0,0 +1,156 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.PgCqlQuery;
+import org.z3950.zing.cql.CQLAndNode;
+import org.z3950.zing.cql.CQLBooleanNode;
+import org.z3950.zing.cql.CQLNode;
+import org.z3950.zing.cql.CQLNotNode;
+import org.z3950.zing.cql.CQLOrNode;
+import org.z3950.zing.cql.CQLParseException;
+import org.z3950.zing.cql.CQLParser;
+import org.z3950.zing.cql.CQLRelation;
+import org.z3950.zing.cql.CQLSortNode;
+import org.z3950.zing.cql.CQLTermNode;
+import org.z3950.zing.cql.ModifierSet;
+
+/**
+ * CQL to SQL translation with terms on paths inside a JSONB column.
+ *
+ * <p>A term such as {@code value.enabled==true} matches rows whose column
+ * {@code value} contains {@code {"value": {"enabled": true}}}, which a
+ * {@code jsonb_path_ops} GIN index can serve. A term that looks like a boolean or
+ * number also matches the string. Only = and == (match) and &lt;&gt; (no match)
+ * are supported; there is no truncation. Other terms are translated by the
+ * definition, which must have field cql.allRecords.
+ */
+final class JsonbCql {
+
+  private JsonbCql() {
+  }
+
+  /**
+   * Translate CQL query to SQL.
+   *
+   * @param definition definition for terms not on the JSONB column
+   * @param column JSONB column; also the first path element in CQL
+   * @param cql CQL query; null for all records
+   * @return translation
+   * @throws IllegalArgumentException for invalid CQL
+   */
+  static CqlCache.Translation translate(PgCqlDefinition definition, String column, String cql) {
+    if (cql == null || !cql.contains(column)) {
+      return translation(definition.parse(cql));
+    }
+    CQLNode node;
+    try {
+      node = new CQLParser().parse(cql);
+    } catch (CQLParseException | IOException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+    CQLSortNode sortNode = null;
+    if (node instanceof CQLSortNode s) {
+      sortNode = s;
+      node = s.getSubtree();
+    }
+    if (!hasColumnTerm(node, column)) {
+      return translation(definition.parse(cql));
+    }
+    String orderBy = null;
+    if (sortNode != null) {
+      CQLSortNode allRecords = new CQLSortNode(
+          new CQLTermNode("cql.allRecords", new CQLRelation("="), "1"));
+      for (ModifierSet index : sortNode.getSortIndexes()) {
+        allRecords.addSortIndex(index);
+      }
+      orderBy = definition.parse(allRecords.toCQL()).getOrderByClause();
+    }
+    return new CqlCache.Translation(where(definition, column, node), orderBy);
+  }
+
+  private static CqlCache.Translation translation(PgCqlQuery pgCqlQuery) {
+    return new CqlCache.Translation(pgCqlQuery.getWhereClause(),
+        pgCqlQuery.getOrderByClause());
+  }
+
+  private static boolean isColumnIndex(String index, String column) {
+    return index.equals(column) || index.startsWith(column + ".");
+  }
+
+  private static boolean hasColumnTerm(CQLNode node, String column) {
+    if (node instanceof CQLTermNode t) {
+      return isColumnIndex(t.getIndex(), column);
+    }
+    if (node instanceof CQLBooleanNode b) {
+      return hasColumnTerm(b.getLeftOperand(), column)
+          || hasColumnTerm(b.getRightOperand(), column);
+    }
+    return false;
+  }
+
+  private static String where(PgCqlDefinition definition, String column, CQLNode node) {
+    if (node instanceof CQLTermNode t) {
+      if (isColumnIndex(t.getIndex(), column)) {
+        return columnWhere(column, t);
+      }
+      String where = definition.parse(t.toCQL()).getWhereClause();
+      return where == null ? "TRUE" : where;
+    }
+    if (node instanceof CQLAndNode b) {
+      return "(" + where(definition, column, b.getLeftOperand())
+          + " AND " + where(definition, column, b.getRightOperand()) + ")";
+    }
+    if (node instanceof CQLOrNode b) {
+      return "(" + where(definition, column, b.getLeftOperand())
+          + " OR " + where(definition, column, b.getRightOperand()) + ")";
+    }
+    if (node instanceof CQLNotNode b) {
+      return "(" + where(definition, column, b.getLeftOperand())
+          + " AND NOT " + where(definition, column, b.getRightOperand()) + ")";
+    }
+    throw new IllegalArgumentException("Unsupported operator in " + node.toCQL());
+  }
+
+  private static String columnWhere(String column, CQLTermNode node) {
+    String relation = node.getRelation().getBase();
+    boolean match = relation.equals("=") || relation.equals("==");
+    if (!match && !relation.equals("<>")) {
+      throw new IllegalArgumentException("Unsupported relation " + relation
+          + " for " + node.getIndex());
+    }
+    String[] path = node.getIndex().split("\\.", -1);
+    for (String element : path) {
+      if (element.isEmpty()) {
+        throw new IllegalArgumentException("Bad path " + node.getIndex());
+      }
+    }
+    String term = node.getTerm();
+    List<Object> values = new ArrayList<>();
+    values.add(term);
+    try {
+      Object value = Json.decodeValue(term);
+      if (value instanceof Boolean || value instanceof Number) {
+        values.add(value);
+      }
+    } catch (DecodeException e) {
+      // just a string
+    }
+    List<String> conditions = new ArrayList<>();
+    for (Object value : values) {
+      Object contained = value;
+      for (int i = path.length - 1; i >= 0; i--) {
+        contained = new JsonObject().put(path[i], contained);
+      }
+      String json = ((JsonObject) contained).encode().replace("'", "''");
+      conditions.add(column + " @> '" + json + "'");
+    }
+    String where = "(" + String.join(" OR ", conditions) + ")";
+    return match ? where : "NOT " + where;
+  }
+}
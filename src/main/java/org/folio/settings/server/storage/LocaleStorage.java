@@ -22,6 +22,8 @@ public class LocaleStorage {
   private static final SemVer SEM_VER_1_3_0 = new SemVer("1.3.0");
   private static final SemVer SEM_VER_1_3_1 = new SemVer("1.3.1");
 
+  private final Vertx vertx;
+
   private final TenantPgPool pool;
 
   private final String localeTable;
@@ -30,6 +32,7 @@ public class LocaleStorage {
    * Database storage for locale settings for a tenant.
    */
   public LocaleStorage(Vertx vertx, String tenant) {
+    this.vertx = vertx;
     this.pool = TenantPgPool.pool(vertx, tenant);
     this.localeTable = pool.getSchema() + ".locale";
   }
@@ -39,7 +42,9 @@ public class LocaleStorage {
    */
   public Future<Void> init(TenantInitConf tenantInitConf, String oldVersion) {
     return initTable()
-        .compose(x -> migrateData(tenantInitConf, oldVersion));
+        .compose(x -> migrateData(tenantInitConf, oldVersion))
+        // a purged and re-created tenant may still have cached values
+        .onComplete(x -> ReadCache.invalidate(localeTable));
   }
 
   private Future<Void> initTable() {
@@ -86,7 +91,8 @@ public class LocaleStorage {
         CREATE OR REPLACE TRIGGER locale_singleton BEFORE DELETE OR INSERT ON %s
           EXECUTE FUNCTION %s.locale_singleton()
         """.formatted(localeTable, pool.getSchema())
-        ));
+        ))
+        .compose(x -> pool.execute(ReadCache.notifySql(pool.getSchema(), "locale")));
   }
 
   private Future<Void> allowNullInNumberingSystem() {
@@ -146,8 +152,14 @@ public class LocaleStorage {
 
   /**
    * Get locale settings.
+   *
+   * <p>Served from {@link ReadCache}; the table notifies on change.
    */
   public Future<LocaleSettings> getLocale() {
+    return ReadCache.get(vertx, localeTable, "", this::getLocaleFromTable);
+  }
+
+  private Future<LocaleSettings> getLocaleFromTable() {
     return pool.query("SELECT locale, currency, timezone, numberingsystem FROM " + localeTable)
         .execute()
         .map(rowSet -> {
@@ -171,6 +183,7 @@ public class LocaleStorage {
             localeSettings.getCurrency(),
             localeSettings.getTimezone(),
             localeSettings.getNumberingSystem()))
+        .onComplete(x -> ReadCache.invalidate(localeTable))
         .mapEmpty();
   }
 
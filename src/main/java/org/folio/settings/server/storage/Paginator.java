@@ -1,45 +1,49 @@
 package org.folio.settings.server.storage;
 
 import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
 import java.util.function.BiConsumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.folio.tlib.postgres.PgCqlDefinition;
 
 public class Paginator {
 
   private static final Logger log = LogManager.getLogger(Paginator.class);
 
   private final String selectQuery;
-  private final String countQuery;
-  private final BiConsumer<HttpServerResponse, Row> rowMapper;
+  private final Tuple selectArgs;
+  private final String from;
+  private final TotalRecords totalRecords;
+  private final BiConsumer<Buffer, Row> rowMapper;
 
   /**
    * Pagination request parameters.
    */
-  public record PaginationRequest(
-      String query, Integer offset, Integer limit, PgCqlDefinition definition) {}
+  public record PaginationRequest(String query, Integer offset, Integer limit,
+      TotalRecords totalRecords, CqlCache cqlCache) {}
 
   /**
    * Create a paginator for the given table and request.
    */
   public Paginator(String tableName,
                    PaginationRequest request,
-                   BiConsumer<HttpServerResponse, Row> rowMapper) {
+                   BiConsumer<Buffer, Row> rowMapper) {
     this.rowMapper = rowMapper;
-    var cqlQuery = request.definition.parse(request.query);
-    var where = cqlQuery.getWhereClause();
-    var from = tableName + (where == null ? "" : " WHERE " + where);
-    var orderBy = cqlQuery.getOrderByClause();
+    var cql = request.cqlCache.translate(request.query);
+    var where = cql.where();
+    this.from = tableName + (where == null ? "" : " WHERE " + where);
+    this.totalRecords = request.totalRecords;
+    var orderBy = cql.orderBy();
     this.selectQuery = "SELECT * FROM " + from
         + (orderBy == null ? "" : " ORDER BY " + orderBy)
-        + " LIMIT " + request.limit + " OFFSET " + request.offset;
-    this.countQuery = "SELECT COUNT(*) FROM " + from;
+        + " LIMIT $1 OFFSET $2";
+    this.selectArgs = Tuple.of(request.limit.longValue(), request.offset.longValue());
     log.debug("Paginator:: Select SQL query: {}", this.selectQuery);
-    log.debug("Paginator:: Count SQL query: {}", this.countQuery);
+    log.debug("Paginator:: Count {} FROM: {}", this.totalRecords, this.from);
   }
 
   /**
@@ -48,6 +52,20 @@ public class Paginator {
   public Future<Void> streamResult(
       HttpServerResponse response, SqlConnection connection, String property) {
     return StreamHelper.streamResult(
-        response, connection, selectQuery, countQuery, property, rowMapper);
+        response, connection, selectQuery, selectArgs,
+        conn -> totalRecords.count(conn, from, Tuple.tuple()),
+        property, rowMapper, Integer.MAX_VALUE, null);
+  }
+
+  /**
+   * Render paginated results in memory; only for small tables.
+   *
+   * @return async result with JSON response body
+   */
+  public Future<Buffer> bufferResult(SqlConnection connection, String property) {
+    return StreamHelper.bufferResult(
+        connection, selectQuery, selectArgs,
+        conn -> totalRecords.count(conn, from, Tuple.tuple()),
+        property, rowMapper, Integer.MAX_VALUE, null);
   }
 }
@@ -0,0 +1,154 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.json.JsonArray;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings permissions of X-Okapi-Permissions compiled to a map from scope to
+ * a bitset of global/users/owner and read/write rights.
+ *
+ * <p>Both mod-settings.RIGHT.TYPE.SCOPE and mod-settings.RIGHT.SCOPE.TYPE are recognized.
+ * Compiled instances are immutable and shared between requests with the same header.
+ */
+public final class PermissionIndex {
+
+  static final String PERM_PREFIX = "mod-settings";
+  static final String PERM_GLOBAL = "global";
+  static final String PERM_USERS = "users";
+  static final String PERM_OWNER = "owner";
+  static final String PERM_READ = "read";
+  static final String PERM_WRITE = "write";
+
+  static final int GLOBAL_READ = 1;
+  static final int GLOBAL_WRITE = 1 << 1;
+  static final int USERS_READ = 1 << 2;
+  static final int USERS_WRITE = 1 << 3;
+  static final int OWNER_READ = 1 << 4;
+  static final int OWNER_WRITE = 1 << 5;
+
+  private static final int CACHE_SIZE = 256;
+
+  private static final Map<String, PermissionIndex> cache = Collections.synchronizedMap(
+      new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PermissionIndex> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      });
+
+  private final Map<String, Integer> scopes = new LinkedHashMap<>();
+
+  private PermissionIndex() {
+  }
+
+  /**
+   * Get compiled permissions for X-Okapi-Permissions header value.
+   *
+   * <p>Recently used header values are cached, so the header is parsed only once.
+   *
+   * @param header JSON array of permission names
+   * @return compiled permissions
+   */
+  public static PermissionIndex fromHeader(String header) {
+    PermissionIndex index = cache.get(header);
+    if (index == null) {
+      index = of(new JsonArray(header));
+      cache.put(header, index);
+    }
+    return index;
+  }
+
+  /**
+   * Compile permissions.
+   *
+   * @param permissions permission names; non-string elements are ignored
+   * @return compiled permissions
+   */
+  public static PermissionIndex of(JsonArray permissions) {
+    PermissionIndex index = new PermissionIndex();
+    permissions.forEach(p -> {
+      if (p instanceof String str) {
+        index.add(str);
+      }
+    });
+    return index;
+  }
+
+  /**
+   * Bit for a right and type combination.
+   *
+   * @param right global, users or owner
+   * @param type read or write
+   * @return bit; 0 if right or type is unknown
+   */
+  static int bit(String right, String type) {
+    int shift = switch (right) {
+      case PERM_GLOBAL -> 0;
+      case PERM_USERS -> 2;
+      case PERM_OWNER -> 4;
+      default -> -1;
+    };
+    if (shift < 0) {
+      return 0;
+    }
+    return switch (type) {
+      case PERM_READ -> 1 << shift;
+      case PERM_WRITE -> 2 << shift;
+      default -> 0;
+    };
+  }
+
+  private void add(String permission) {
+    if (!permission.startsWith(PERM_PREFIX + ".")) {
+      return;
+    }
+    int off1 = PERM_PREFIX.length();
+    int off2 = permission.indexOf('.', off1 + 1);
+    if (off2 < 0) {
+      return;
+    }
+    String right = permission.substring(off1 + 1, off2);
+    String tail = permission.substring(off2 + 1);
+    // mod-settings.RIGHT.TYPE.SCOPE
+    int off3 = tail.indexOf('.');
+    if (off3 > 0) {
+      add(tail.substring(off3 + 1), bit(right, tail.substring(0, off3)));
+    }
+    // mod-settings.RIGHT.SCOPE.TYPE
+    int off4 = tail.lastIndexOf('.');
+    if (off4 > 0) {
+      add(tail.substring(0, off4), bit(right, tail.substring(off4 + 1)));
+    }
+  }
+
+  private void add(String scope, int bit) {
+    if (bit != 0 && !scope.isEmpty()) {
+      scopes.merge(scope, bit, (a, b) -> a | b);
+    }
+  }
+
+  /**
+   * Rights for a scope.
+   *
+   * @param scope settings scope
+   * @return bitset of rights; 0 if none
+   */
+  int rights(String scope) {
+    return scopes.getOrDefault(scope, 0);
+  }
+
+  /**
+   * Scopes that have a right.
+   *
+   * @param bit right, such as {@link #GLOBAL_READ}
+   * @return scopes in permission order
+   */
+  String[] scopes(int bit) {
+    return scopes.entrySet().stream()
+        .filter(e -> (e.getValue() & bit) != 0)
+        .map(Map.Entry::getKey)
+        .toArray(String[]::new);
+  }
+}
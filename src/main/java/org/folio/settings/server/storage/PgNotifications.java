@@ -0,0 +1,93 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.pubsub.PgSubscriber;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * Postgres LISTEN for all tenants of a module instance over one connection.
+ *
+ * <p>Notifications are sent with pg_notify from triggers, with the schema in the
+ * payload where the receiver needs to know the tenant. The connection is opened on
+ * first use and reconnected if lost.
+ */
+public final class PgNotifications {
+
+  private static final Logger log = LogManager.getLogger(PgNotifications.class);
+
+  private record Listener(Consumer<String> handler, Runnable subscribed) {}
+
+  private static final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+  private static volatile PgSubscriber subscriber;
+
+  private PgNotifications() {
+  }
+
+  /**
+   * Listen on a channel; does nothing if already listening on it.
+   *
+   * @param vertx Vert.x instance
+   * @param channel channel name
+   * @param handler gets the payload of each notification
+   * @param subscribed called whenever listening (again), as notifications may have
+   *     been missed while not listening
+   */
+  static void listen(Vertx vertx, String channel, Consumer<String> handler,
+      Runnable subscribed) {
+    if (subscriber != null && listeners.containsKey(channel)) {
+      return;
+    }
+    synchronized (PgNotifications.class) {
+      Listener listener = new Listener(handler, subscribed);
+      if (listeners.putIfAbsent(channel, listener) == null && subscriber != null) {
+        subscribe(subscriber, channel, listener);
+      }
+      if (subscriber != null) {
+        return;
+      }
+      // the default options are complete once a tenant pool has been created
+      PgSubscriber s = PgSubscriber.subscriber(vertx,
+          new PgConnectOptions(TenantPgPool.getDefaultConnectOptions()));
+      s.reconnectPolicy(retries -> 1000L);
+      listeners.forEach((c, l) -> subscribe(s, c, l));
+      subscriber = s;
+      s.connect().onFailure(e -> {
+        log.warn("Listener not connected: {}", e.getMessage(), e);
+        synchronized (PgNotifications.class) {
+          if (subscriber == s) {
+            subscriber = null;  // try again on next use
+          }
+        }
+      });
+    }
+  }
+
+  private static void subscribe(PgSubscriber s, String channel, Listener listener) {
+    s.channel(channel)
+        .handler(payload -> listener.handler().accept(payload))
+        .subscribeHandler(x -> listener.subscribed().run());
+  }
+
+  /**
+   * Stop listening on all channels.
+   */
+  public static Future<Void> close() {
+    PgSubscriber s;
+    synchronized (PgNotifications.class) {
+      s = subscriber;
+      subscriber = null;
+      listeners.clear();
+    }
+    if (s != null) {
+      s.close();
+    }
+    return Future.succeededFuture();
+  }
+}
@@ -0,0 +1,7 @@
+package org.folio.settings.server.storage;
+
+public class PreconditionFailedException extends RuntimeException {
+  public PreconditionFailedException() {
+    super("Precondition Failed");
+  }
+}
@@ -0,0 +1,113 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.folio.tlib.postgres.TenantPgPool;
+
+/**
+ * In-memory cache for small, rarely changed tables such as locale and baseurl.
+ *
+ * <p>Entries are keyed by schema qualified table name, so they are per tenant.
+ * Triggers on the cached tables send a notification on {@link #CHANNEL} with the
+ * table name as payload; every module instance listens on that channel and drops
+ * its entries for the table. Entries also expire after {@link #TTL_MS}, in case a
+ * notification is lost while the listening connection is down.
+ */
+public final class ReadCache {
+
+  static final String CHANNEL = "mod_settings_cache";
+  static final long TTL_MS = Long.getLong("cache.ttl.ms", 60000L);
+
+  private record Item(Future<?> value, long expires) {}
+
+  private static final Map<String, Item> items = new ConcurrentHashMap<>();
+
+  private ReadCache() {
+  }
+
+  /**
+   * SQL that makes a table notify cache listeners on change.
+   *
+   * @param schema tenant schema
+   * @param table table name without schema
+   * @return statements for {@link TenantPgPool#execute(List)}
+   */
+  public static List<String> notifySql(String schema, String table) {
+    return List.of(
+        """
+        CREATE OR REPLACE FUNCTION %s.cache_notify()
+          RETURNS TRIGGER AS $$
+          BEGIN
+            PERFORM pg_notify('%s', TG_TABLE_SCHEMA || '.' || TG_TABLE_NAME);
+            RETURN NULL;
+          END;
+          $$ language plpgsql
+        """.formatted(schema, CHANNEL),
+
+        """
+        CREATE OR REPLACE TRIGGER %s_cache_notify
+          AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON %s.%s
+          FOR EACH STATEMENT EXECUTE FUNCTION %s.cache_notify()
+        """.formatted(table, schema, table, schema));
+  }
+
+  /**
+   * Get cached value, loading it on miss.
+   *
+   * <p>Starts listening for notifications on first use.
+   *
+   * @param vertx Vert.x instance
+   * @param table schema qualified table name
+   * @param key key within table; empty for single row tables
+   * @param loader reads the value from the database
+   * @return async result with value
+   */
+  public static <T> Future<T> get(Vertx vertx, String table, String key,
+      Supplier<Future<T>> loader) {
+    // notifications may have been missed while not listening
+    PgNotifications.listen(vertx, CHANNEL, ReadCache::invalidate, ReadCache::clear);
+    return get(table, key, loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> Future<T> get(String table, String key, Supplier<Future<T>> loader) {
+    String k = table + "/" + key;
+    long now = System.currentTimeMillis();
+    Item item = items.get(k);
+    if (item != null && item.expires() > now) {
+      return (Future<T>) item.value();
+    }
+    // concurrent misses share the same load
+    Future<T> future = loader.get();
+    Item newItem = new Item(future, now + TTL_MS);
+    items.put(k, newItem);
+    future.onFailure(e -> items.remove(k, newItem));
+    return future;
+  }
+
+  /**
+   * Drop cached values of a table.
+   *
+   * @param table schema qualified table name
+   */
+  public static void invalidate(String table) {
+    String prefix = table + "/";
+    items.keySet().removeIf(k -> k.startsWith(prefix));
+  }
+
+  static void clear() {
+    items.clear();
+  }
+
+  /**
+   * Drop all cached values.
+   */
+  public static Future<Void> close() {
+    clear();
+    return Future.succeededFuture();
+  }
+}
@@ -0,0 +1,243 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP responses that get the same streamed JSON body.
+ *
+ * <p>Responses may join the group until more than maxReplayBytes have been written;
+ * a response that joins first gets what has been written so far. The writer should
+ * pause while {@link #writeQueueFull()} is true for any response. Responses that are
+ * closed leave the group; when all have left, the close handler is called.
+ *
+ * <p>The writer uses the group on the Vert.x context that created it; responses may
+ * join from other contexts and get their results on their own context.
+ */
+public final class ResponseGroup {
+
+  private record Member(HttpServerResponse response, Context context, Promise<Void> promise) {}
+
+  private final Context context;
+  private final int maxReplayBytes;
+  private final List<Member> members = new ArrayList<>();
+  private List<Buffer> replay = new ArrayList<>();
+  private int replayBytes;
+  private boolean started;
+  private boolean ended;
+  private Runnable fullHandler;
+  private Handler<Void> drainHandler;
+  private Handler<Throwable> closeHandler;
+
+  /**
+   * Create group.
+   *
+   * @param response first response, of the writer
+   * @param maxReplayBytes bytes kept for responses that join later
+   */
+  public ResponseGroup(HttpServerResponse response, int maxReplayBytes) {
+    this.context = Vertx.currentContext();
+    this.maxReplayBytes = maxReplayBytes;
+    add(response, Promise.promise());
+  }
+
+  /**
+   * Set handler called when responses can no longer join.
+   */
+  public synchronized ResponseGroup fullHandler(Runnable handler) {
+    fullHandler = handler;
+    if (replay == null) {
+      handler.run();
+    }
+    return this;
+  }
+
+  /**
+   * Join group.
+   *
+   * @param response HTTP response that gets the body
+   * @return async result when the body has been sent; null if it is too late to join
+   */
+  public synchronized Future<Void> join(HttpServerResponse response) {
+    if (replay == null) {
+      return null;
+    }
+    Promise<Void> promise = Promise.promise();
+    add(response, promise);
+    if (started) {
+      startResponse(response);
+      replay.forEach(response::write);
+    }
+    if (ended) {
+      response.end();
+      promise.complete();
+    } else if (drainHandler != null && response.writeQueueFull()) {
+      response.drainHandler(v -> checkDrain());
+    }
+    return promise.future();
+  }
+
+  private void add(HttpServerResponse response, Promise<Void> promise) {
+    Member member = new Member(response, Vertx.currentContext(), promise);
+    members.add(member);
+    response.closeHandler(v -> leave(member, new IllegalStateException("Response closed")));
+    response.exceptionHandler(e -> leave(member, e));
+  }
+
+  private void leave(Member member, Throwable e) {
+    Handler<Throwable> handler = null;
+    synchronized (this) {
+      if (ended || !members.remove(member)) {
+        return;
+      }
+      if (members.isEmpty()) {
+        handler = closeHandler;
+      }
+    }
+    settle(member, Future.failedFuture(e));
+    if (handler != null) {
+      Handler<Throwable> h = handler;
+      runOnContext(context, v -> h.handle(e));
+    } else {
+      checkDrain();
+    }
+  }
+
+  /**
+   * Set handler called when all responses have been closed before the body was sent.
+   */
+  public synchronized ResponseGroup closeHandler(Handler<Throwable> handler) {
+    closeHandler = handler;
+    if (members.isEmpty() && !ended) {
+      runOnContext(context, v -> handler.handle(new IllegalStateException("Response closed")));
+    }
+    return this;
+  }
+
+  /**
+   * Send headers of a chunked JSON response.
+   */
+  public synchronized void start() {
+    started = true;
+    members.forEach(member -> startResponse(member.response));
+  }
+
+  private static void startResponse(HttpServerResponse response) {
+    response.setChunked(true);
+    response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+  }
+
+  /**
+   * Write buffer to all responses. The responses own the buffer until it is sent.
+   */
+  public synchronized void write(Buffer buffer) {
+    members.forEach(member -> member.response.write(buffer));
+    if (replay == null) {
+      return;
+    }
+    replayBytes += buffer.length();
+    if (replayBytes <= maxReplayBytes) {
+      replay.add(buffer);
+      return;
+    }
+    replay = null;
+    if (fullHandler != null) {
+      fullHandler.run();
+    }
+  }
+
+  /**
+   * Whether the write queue of any response is full.
+   */
+  public synchronized boolean writeQueueFull() {
+    for (Member member : members) {
+      if (member.response.writeQueueFull()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Set handler called once when no write queue is full.
+   */
+  public void drainHandler(Handler<Void> handler) {
+    synchronized (this) {
+      drainHandler = handler;
+      for (Member member : members) {
+        if (member.response.writeQueueFull()) {
+          member.response.drainHandler(v -> checkDrain());
+        }
+      }
+    }
+    // a queue may have drained before its drain handler was set
+    checkDrain();
+  }
+
+  private void checkDrain() {
+    Handler<Void> handler;
+    synchronized (this) {
+      if (drainHandler == null || writeQueueFull()) {
+        return;
+      }
+      handler = drainHandler;
+      drainHandler = null;
+    }
+    runOnContext(context, handler);
+  }
+
+  /**
+   * Write last buffer and end all responses.
+   */
+  public void end(Buffer buffer) {
+    List<Member> done;
+    synchronized (this) {
+      ended = true;
+      if (replay != null) {
+        replay.add(buffer);
+      }
+      done = new ArrayList<>(members);
+    }
+    for (Member member : done) {
+      member.response.end(buffer);
+      settle(member, Future.succeededFuture());
+    }
+  }
+
+  /**
+   * Fail the responses that joined, before anything has been written.
+   */
+  public void fail(Throwable e) {
+    List<Member> failed;
+    synchronized (this) {
+      ended = true;
+      replay = null;
+      if (fullHandler != null) {
+        fullHandler.run();
+      }
+      failed = new ArrayList<>(members);
+    }
+    failed.forEach(member -> settle(member, Future.failedFuture(e)));
+  }
+
+  private static void settle(Member member, AsyncResult<Void> result) {
+    runOnContext(member.context, v -> member.promise.handle(result));
+  }
+
+  private static void runOnContext(Context context, Handler<Void> handler) {
+    if (context == null) {
+      handler.handle(null);
+    } else {
+      context.runOnContext(handler);
+    }
+  }
+}
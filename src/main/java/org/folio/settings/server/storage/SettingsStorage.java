@@ -1,27 +1,40 @@
 package org.folio.settings.server.storage;
 
+import static org.folio.settings.server.storage.PermissionIndex.PERM_GLOBAL;
+import static org.folio.settings.server.storage.PermissionIndex.PERM_OWNER;
+import static org.folio.settings.server.storage.PermissionIndex.PERM_READ;
+import static org.folio.settings.server.storage.PermissionIndex.PERM_USERS;
+import static org.folio.settings.server.storage.PermissionIndex.PERM_WRITE;
+
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.pgclient.PgException;
 import io.vertx.sqlclient.Row;
-import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.SqlConnection;
 import io.vertx.sqlclient.Tuple;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.settings.server.data.Entry;
 import org.folio.tlib.postgres.PgCqlDefinition;
-import org.folio.tlib.postgres.PgCqlQuery;
 import org.folio.tlib.postgres.TenantPgPool;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
 import org.folio.tlib.postgres.cqlfield.PgCqlFieldUuid;
 
@@ -31,19 +44,65 @@ public class SettingsStorage {
 
   private static final String CREATE_IF_NO_EXISTS = "CREATE TABLE IF NOT EXISTS ";
 
-  private static final String PERM_PREFIX = "mod-settings";
-  private static final String PERM_USERS = "users";
-  private static final String PERM_GLOBAL = "global";
-  private static final String PERM_OWNER = "owner";
+  static final String CREATE_TRGM_EXTENSION = "CREATE EXTENSION IF NOT EXISTS pg_trgm";
+
+  /**
+   * Entry JSON as rendered by the database, the same properties as the Entry class
+   * serializes to, and the columns needed for keyset paging. The JSON is UTF-8
+   * bytea, so it is passed on to the response as is, without decoding to a String.
+   */
+  private static final String SELECT_JSON = "SELECT convert_to((value || jsonb_strip_nulls("
+      + "jsonb_build_object('id', id, 'scope', scope, 'key', key, 'userId', userId)))::text,"
+      + " 'UTF8') AS json, id, scope, key, userId";
+
+  private static final CqlCache CQL_CACHE = new CqlCache(createCqlDefinition(), "value");
+
+  /**
+   * Identical settings queries may share a result until this many bytes of it have
+   * been written. Can be set with system property shared.max.bytes.
+   */
+  static final int SHARED_MAX_BYTES = Integer.getInteger("shared.max.bytes", 65536);
+
+  private record EntriesKey(String sql, List<Object> args, TotalRecords totalRecords) {}
+
+  private static final Map<EntriesKey, ResponseGroup> SHARED_ENTRIES = new ConcurrentHashMap<>();
+
+  private static final AtomicLong SHARED_QUERIES = new AtomicLong();
+
+  /**
+   * Number of settings queries that got the result of an identical query of another request.
+   */
+  public static long getSharedQueries() {
+    return SHARED_QUERIES.get();
+  }
+
+  /**
+   * Milliseconds that lookups by id wait for more lookups of the same tenant.
+   * Can be set with system property batch.window.ms.
+   */
+  static final long BY_ID_WINDOW_MS = Long.getLong("batch.window.ms", 2L);
+
+  static final int BY_ID_MAX = 100;
+
+  private static final Map<String, Batcher<UUID, VersionedEntry>> BY_ID =
+      new ConcurrentHashMap<>();
 
-  private static final String PERM_READ = "read";
-  private static final String PERM_WRITE = "write";
+  /**
+   * Days that changes are kept in the change log.
+   */
+  static final int CHANGES_RETENTION_DAYS = 30;
+
+  private final Vertx vertx;
 
   private final TenantPgPool pool;
 
   private final String settingsTable;
 
-  private final JsonArray permissions;
+  private final String scopeVersionTable;
+
+  private final String changesTable;
+
+  private final PermissionIndex permissions;
 
   private final UUID currentUser;
 
@@ -57,11 +116,25 @@ public class SettingsStorage {
    * @param currentUser UUID of user as it comes from X-Okapi-User-Id
    * @param permissions permissions as it comes from X-Okapi-Permissions
    */
-  public SettingsStorage(Vertx vertx, String tenant, UUID currentUser, JsonArray permissions) {
+  public SettingsStorage(Vertx vertx, String tenant, UUID currentUser,
+      PermissionIndex permissions) {
+    this.vertx = vertx;
     this.pool = TenantPgPool.pool(vertx, tenant);
     this.permissions = permissions;
     this.currentUser = currentUser;
     this.settingsTable = pool.getSchema() + ".settings";
+    this.scopeVersionTable = pool.getSchema() + ".settings_scope_version";
+    this.changesTable = pool.getSchema() + ".settings_changes";
+  }
+
+  private static PgCqlDefinition createCqlDefinition() {
+    PgCqlDefinition definition = PgCqlDefinition.create();
+    definition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    definition.addField("id", new PgCqlFieldUuid());
+    definition.addField("scope", new PgCqlFieldText().withExact());
+    definition.addField("key", new PgCqlFieldText().withLikeOps());
+    definition.addField("userId", new PgCqlFieldUuid());
+    return definition;
   }
 
   /**
@@ -70,6 +143,17 @@ public class SettingsStorage {
    * @return async result
    */
   public Future<Void> init() {
+    return init(null);
+  }
+
+  /**
+   * Prepares storage for a tenant, AKA tenant init.
+   *
+   * @param valueIndex true to create GIN index for CQL on value paths; false to drop
+   *     it; null to leave it as it is
+   * @return async result
+   */
+  public Future<Void> init(Boolean valueIndex) {
     return pool.execute(List.of(
         CREATE_IF_NO_EXISTS + settingsTable
             + "(id uuid NOT NULL PRIMARY KEY,"
@@ -82,8 +166,174 @@ public class SettingsStorage {
         "CREATE UNIQUE INDEX IF NOT EXISTS settings_scope_key_users ON "
             + settingsTable + "(scope, key text_pattern_ops, userId) WHERE userId is NOT NULL",
         "CREATE UNIQUE INDEX IF NOT EXISTS settings_scope_key_global ON "
-            + settingsTable + "(scope, key text_pattern_ops) WHERE userId is NULL"
-    ));
+            + settingsTable + "(scope, key text_pattern_ops) WHERE userId is NULL",
+        // keyset paging order; text_pattern_ops above does not match default collation
+        "CREATE INDEX IF NOT EXISTS settings_scope_key_userid_id ON "
+            + settingsTable + "(scope, key, userId NULLS FIRST, id)",
+        // all settings of a user in order; values are read from the table, as
+        // an index tuple could not hold a large value
+        "DROP INDEX IF EXISTS " + pool.getSchema() + ".settings_userid_scope_key",
+        "CREATE INDEX IF NOT EXISTS settings_userid_scope_key_id ON "
+            + settingsTable + "(userId, scope, key) INCLUDE (id)"
+            + " WHERE userId IS NOT NULL",
+        // RFC 7396 JSON Merge Patch
+        """
+        CREATE OR REPLACE FUNCTION %s.jsonb_merge_patch(target jsonb, patch jsonb)
+          RETURNS jsonb AS $$
+          DECLARE
+            k text;
+            v jsonb;
+          BEGIN
+            IF jsonb_typeof(patch) IS DISTINCT FROM 'object' THEN
+              RETURN patch;
+            END IF;
+            IF jsonb_typeof(target) IS DISTINCT FROM 'object' THEN
+              target := '{}';
+            END IF;
+            FOR k, v IN SELECT * FROM jsonb_each(patch) LOOP
+              IF jsonb_typeof(v) = 'null' THEN
+                target := target - k;
+              ELSE
+                target := jsonb_set(target, ARRAY[k], %s.jsonb_merge_patch(target -> k, v));
+              END IF;
+            END LOOP;
+            RETURN target;
+          END;
+          $$ LANGUAGE plpgsql IMMUTABLE
+        """.formatted(pool.getSchema(), pool.getSchema()),
+        // change log for incremental sync
+        CREATE_IF_NO_EXISTS + changesTable
+            + "(seq bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY,"
+            + " op VARCHAR NOT NULL,"
+            + " id uuid NOT NULL,"
+            + " scope VARCHAR NOT NULL,"
+            + " key VARCHAR NOT NULL,"
+            + " userId uuid,"
+            + " changed timestamptz NOT NULL DEFAULT now()"
+            + ")",
+        "CREATE INDEX IF NOT EXISTS settings_changes_changed ON " + changesTable + "(changed)",
+        // earlier versions locked the change log before every write statement
+        "DROP TRIGGER IF EXISTS settings_changes_lock ON " + settingsTable,
+        "DROP FUNCTION IF EXISTS " + pool.getSchema() + ".settings_changes_lock()",
+        // one writer at a time from its first change until commit, so that sequence
+        // numbers are in commit order and readers never skip a change committed later;
+        // statements that change nothing do not take the lock
+        """
+        CREATE OR REPLACE FUNCTION %1$s.settings_changes()
+          RETURNS TRIGGER AS $$
+          BEGIN
+            IF TG_OP = 'DELETE' THEN
+              IF NOT EXISTS (SELECT 1 FROM old_rows) THEN
+                RETURN NULL;
+              END IF;
+            ELSIF NOT EXISTS (SELECT 1 FROM new_rows) THEN
+              RETURN NULL;
+            END IF;
+            PERFORM pg_advisory_xact_lock(hashtext('%2$s'));
+            IF TG_OP = 'INSERT' THEN
+              INSERT INTO %2$s (op, id, scope, key, userId)
+                SELECT 'INSERT', id, scope, key, userId FROM new_rows;
+            ELSIF TG_OP = 'UPDATE' THEN
+              -- an entry that is moved is gone from its old scope, key and userId
+              INSERT INTO %2$s (op, id, scope, key, userId)
+                SELECT 'DELETE', o.id, o.scope, o.key, o.userId
+                FROM old_rows o JOIN new_rows n ON n.id = o.id
+                WHERE (o.scope, o.key, o.userId) IS DISTINCT FROM (n.scope, n.key, n.userId);
+              INSERT INTO %2$s (op, id, scope, key, userId)
+                SELECT 'UPDATE', id, scope, key, userId FROM new_rows;
+            ELSE
+              INSERT INTO %2$s (op, id, scope, key, userId)
+                SELECT 'DELETE', id, scope, key, userId FROM old_rows;
+            END IF;
+            DELETE FROM %2$s WHERE changed < now() - interval '%3$d days';
+            PERFORM pg_notify('%4$s', TG_TABLE_SCHEMA);
+            RETURN NULL;
+          END;
+          $$ LANGUAGE plpgsql
+        """.formatted(pool.getSchema(), changesTable, CHANGES_RETENTION_DAYS,
+            ChangeFeed.CHANNEL),
+        "CREATE OR REPLACE TRIGGER settings_changes_insert AFTER INSERT ON "
+            + settingsTable + " REFERENCING NEW TABLE AS new_rows"
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + pool.getSchema() + ".settings_changes()",
+        "CREATE OR REPLACE TRIGGER settings_changes_update AFTER UPDATE ON "
+            + settingsTable + " REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows"
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + pool.getSchema() + ".settings_changes()",
+        "CREATE OR REPLACE TRIGGER settings_changes_delete AFTER DELETE ON "
+            + settingsTable + " REFERENCING OLD TABLE AS old_rows"
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + pool.getSchema() + ".settings_changes()",
+        // version of each scope, bumped once per statement that changes it
+        CREATE_IF_NO_EXISTS + scopeVersionTable
+            + "(scope VARCHAR NOT NULL PRIMARY KEY,"
+            + " version bigint NOT NULL"
+            + ")",
+        // scopes are locked in order, so concurrent writers do not deadlock
+        """
+        CREATE OR REPLACE FUNCTION %s.settings_scope_version()
+          RETURNS TRIGGER AS $$
+          BEGIN
+            IF TG_OP = 'INSERT' THEN
+              INSERT INTO %s AS v (scope, version)
+                SELECT DISTINCT scope, 1 FROM new_rows ORDER BY scope
+                ON CONFLICT (scope) DO UPDATE SET version = v.version + 1;
+            ELSIF TG_OP = 'UPDATE' THEN
+              INSERT INTO %s AS v (scope, version)
+                SELECT scope, 1 FROM (SELECT scope FROM new_rows
+                  UNION SELECT scope FROM old_rows) AS s ORDER BY scope
+                ON CONFLICT (scope) DO UPDATE SET version = v.version + 1;
+            ELSE
+              INSERT INTO %s AS v (scope, version)
+                SELECT DISTINCT scope, 1 FROM old_rows ORDER BY scope
+                ON CONFLICT (scope) DO UPDATE SET version = v.version + 1;
+            END IF;
+            RETURN NULL;
+          END;
+          $$ LANGUAGE plpgsql
+        """.formatted(pool.getSchema(), scopeVersionTable, scopeVersionTable,
+            scopeVersionTable),
+        // transition tables are only allowed for triggers with one event
+        "CREATE OR REPLACE TRIGGER settings_scope_version_insert AFTER INSERT ON "
+            + settingsTable + " REFERENCING NEW TABLE AS new_rows"
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + pool.getSchema() + ".settings_scope_version()",
+        "CREATE OR REPLACE TRIGGER settings_scope_version_update AFTER UPDATE ON "
+            + settingsTable + " REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows"
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + pool.getSchema() + ".settings_scope_version()",
+        "CREATE OR REPLACE TRIGGER settings_scope_version_delete AFTER DELETE ON "
+            + settingsTable + " REFERENCING OLD TABLE AS old_rows"
+            + " FOR EACH STATEMENT EXECUTE FUNCTION "
+            + pool.getSchema() + ".settings_scope_version()"
+    )).compose(x -> {
+      if (valueIndex == null) {
+        return Future.succeededFuture();
+      }
+      // serves containment, which CQL on value paths is translated to
+      return pool.execute(List.of(valueIndex
+          ? "CREATE INDEX IF NOT EXISTS settings_value_gin ON " + settingsTable
+              + " USING gin (value jsonb_path_ops)"
+          : "DROP INDEX IF EXISTS " + pool.getSchema() + ".settings_value_gin"));
+    });
+  }
+
+  /**
+   * Create or drop trigram index for CQL on key with truncation on the left, such as
+   * key=*foo*.
+   *
+   * <p>The index is not created by default as it needs the pg_trgm extension.
+   *
+   * @param create true to create; false to drop
+   * @return async result
+   */
+  public Future<Void> initTrigramIndex(boolean create) {
+    // LIKE, which CQL with truncation is translated to, can use gin_trgm_ops
+    return pool.execute(create
+        ? List.of(CREATE_TRGM_EXTENSION,
+            "CREATE INDEX IF NOT EXISTS settings_key_trgm ON " + settingsTable
+                + " USING gin (key gin_trgm_ops)")
+        : List.of("DROP INDEX IF EXISTS " + pool.getSchema() + ".settings_key_trgm"));
   }
 
   /**
@@ -95,69 +345,66 @@ public class SettingsStorage {
    * @param currentUser user as it is given at runtime
    * @return true if access is OK; false otherwise (forbidden)
    */
-  static boolean checkDesiredPermissions(String type, JsonArray permissions,
+  static boolean checkDesiredPermissions(String type, PermissionIndex permissions,
                                          Entry entry, UUID currentUser) {
+    int rights = permissions.rights(entry.getScope());
     UUID userId = entry.getUserId();
     if (userId == null) {
-      return permissions.contains(PERM_PREFIX + "." + PERM_GLOBAL + "."
-          + type + "." + entry.getScope())
-          || permissions.contains(PERM_PREFIX + "." + PERM_GLOBAL + "."
-          + entry.getScope() + "." + type);
-    }
-    if (permissions.contains(PERM_PREFIX + "." + PERM_USERS + "."
-        + type + "." + entry.getScope())
-        || permissions.contains(PERM_PREFIX + "." + PERM_USERS + "."
-        + entry.getScope() + "." + type)) {
+      return (rights & PermissionIndex.bit(PERM_GLOBAL, type)) != 0;
+    }
+    if ((rights & PermissionIndex.bit(PERM_USERS, type)) != 0) {
       return true;
     }
-    return (permissions.contains(PERM_PREFIX + "." + PERM_OWNER + "."
-        + type + "." + entry.getScope())
-        || permissions.contains(PERM_PREFIX + "." + PERM_OWNER + "."
-        + entry.getScope() + "." + type))
+    return (rights & PermissionIndex.bit(PERM_OWNER, type)) != 0
         && currentUser != null && currentUser.equals(userId);
   }
 
-  static List<String> getCqlLimitPermissions(
-      JsonArray permissions, UUID currentUser) {
-    Map<String, Set<String>> scopeMap = new HashMap<>();
-    permissions.forEach(p -> {
-      if (p instanceof String str) {
-        int off1 = str.indexOf('.');
-        int off2 = str.indexOf('.', off1 + 1);
-        int off3 = str.indexOf('.', off2 + 1);
-        if (off1 > 0 && off2 > 0 && off3 > 0
-            && str.substring(0, off1).equals(PERM_PREFIX)
-            && str.substring(off2 + 1, off3).equals(PERM_READ)) {
-          String scope = str.substring(off3 + 1);
-          if (!scope.isEmpty()) {
-            scopeMap.putIfAbsent(scope, new TreeSet<>());
-            Set<String> rights = scopeMap.get(scope);
-            rights.add(str.substring(off1 + 1, off2));
-          }
-        }
-      }
-    });
-    List<String> queryLimits = new ArrayList<>();
-    scopeMap.forEach((scope,rights) -> {
-      String scopeEq = "scope == \"" + scope + "\"";
-      if (rights.contains(PERM_GLOBAL)) {
-        if (rights.contains(PERM_USERS)) {
-          queryLimits.add(scopeEq);
-        } else if (rights.contains(PERM_OWNER) && currentUser != null) {
-          queryLimits.add("(" + scopeEq + " not userId = \"\")");
-          queryLimits.add("(" + scopeEq + " and userId == \"" + currentUser + "\")");
-        } else {
-          queryLimits.add("(" + scopeEq + " not userId = \"\")");
-        }
-      } else {
-        if (rights.contains(PERM_USERS)) {
-          queryLimits.add("(" + scopeEq + " and userId = \"\")");
-        } else if (rights.contains(PERM_OWNER) && currentUser != null) {
-          queryLimits.add("(" + scopeEq + " and userId == \"" + currentUser + "\")");
-        }
-      }
-    });
-    return queryLimits;
+  /**
+   * SQL condition limiting entries to those that may be read.
+   *
+   * <p>The SQL is the same for all users; the readable scopes are passed as
+   * array parameters, so that the prepared statement can be reused. The user is
+   * only passed if there are owner scopes, so users without owner rights get
+   * the same arguments and can share results.
+   *
+   * @param permissions permissions given at runtime
+   * @param currentUser user as it is given at runtime
+   * @param args arguments to which scopes and user are appended
+   * @return SQL condition; null if no entries may be read
+   */
+  static String getReadLimitClause(PermissionIndex permissions, UUID currentUser, Tuple args) {
+    return getLimitClause(PERM_READ, permissions, currentUser, args);
+  }
+
+  /**
+   * SQL condition limiting entries to those that may be written.
+   *
+   * @param permissions permissions given at runtime
+   * @param currentUser user as it is given at runtime
+   * @param args arguments to which scopes and user are appended
+   * @return SQL condition; null if no entries may be written
+   */
+  static String getWriteLimitClause(PermissionIndex permissions, UUID currentUser, Tuple args) {
+    return getLimitClause(PERM_WRITE, permissions, currentUser, args);
+  }
+
+  private static String getLimitClause(String type, PermissionIndex permissions,
+      UUID currentUser, Tuple args) {
+    String[] global = permissions.scopes(PermissionIndex.bit(PERM_GLOBAL, type));
+    String[] users = permissions.scopes(PermissionIndex.bit(PERM_USERS, type));
+    String[] owner = currentUser == null
+        ? new String[0] : permissions.scopes(PermissionIndex.bit(PERM_OWNER, type));
+    if (global.length == 0 && users.length == 0 && owner.length == 0) {
+      return null;
+    }
+    int n = args.size();
+    args.addArrayOfString(global);
+    args.addArrayOfString(users);
+    args.addUUID(owner.length == 0 ? null : currentUser);
+    args.addArrayOfString(owner);
+    return "(userId IS NULL AND scope = ANY($" + (n + 1) + "))"
+        + " OR (userId IS NOT NULL AND scope = ANY($" + (n + 2) + "))"
+        + " OR (userId = $" + (n + 3) + " AND scope = ANY($" + (n + 4) + "))";
   }
 
   Entry fromRow(Row row) {
@@ -204,35 +451,55 @@ public class SettingsStorage {
         });
   }
 
+  /**
+   * Settings entry with its row version.
+   *
+   * @param entry the entry
+   * @param version changes whenever the entry is written; for use as ETag
+   */
+  public record VersionedEntry(Entry entry, String version) {}
+
   /**
    * Get settings entry.
    *
    * @param id entry identifier
-   * @return async result with entry value; failure otherwise
+   * @return async result with entry value and version; failure otherwise
    */
-  public Future<Entry> getEntry(UUID id) {
+  public Future<VersionedEntry> getEntry(UUID id) {
     return getEntryWoCheck(id)
-        .map(entry -> {
-          if (entry == null) {
+        .map(versioned -> {
+          if (versioned == null) {
             throw new NotFoundException();
           }
-          if (!checkDesiredPermissions(PERM_READ, permissions, entry, currentUser)) {
+          if (!checkDesiredPermissions(PERM_READ, permissions, versioned.entry(), currentUser)) {
             throw new NotFoundException();
           }
-          return entry;
+          return versioned;
         });
   }
 
-  Future<Entry> getEntryWoCheck(UUID id) {
+  /**
+   * Get entry without permission check.
+   *
+   * <p>Lookups for the same tenant that arrive close together are read with one query.
+   *
+   * @param id entry identifier
+   * @return async result with entry; null if not found
+   */
+  Future<VersionedEntry> getEntryWoCheck(UUID id) {
+    return BY_ID.computeIfAbsent(settingsTable, t -> new Batcher<>(BY_ID_WINDOW_MS, BY_ID_MAX))
+        .load(id, this::getEntriesById);
+  }
+
+  private Future<Map<UUID, VersionedEntry>> getEntriesById(List<UUID> ids) {
     return pool.preparedQuery(
-            "SELECT * FROM " + settingsTable + " WHERE id = $1")
-        .execute(Tuple.of(id))
+            "SELECT *, xmin::text AS version FROM " + settingsTable + " WHERE id = ANY($1)")
+        .execute(Tuple.tuple().addArrayOfUUID(ids.toArray(UUID[]::new)))
         .map(rowSet -> {
-          RowIterator<Row> iterator = rowSet.iterator();
-          if (!iterator.hasNext()) {
-            return null;
-          }
-          return fromRow(iterator.next());
+          Map<UUID, VersionedEntry> entries = new HashMap<>();
+          rowSet.forEach(row -> entries.put(row.getUUID("id"),
+              new VersionedEntry(fromRow(row), row.getString("version"))));
+          return entries;
         });
   }
 
@@ -243,48 +510,151 @@ public class SettingsStorage {
    * @return async result; exception if not found or forbidden
    */
   public Future<Void> deleteEntry(UUID id) {
-    return getEntryWoCheck(id).compose(entry -> {
-      if (entry == null) {
-        return Future.failedFuture(new NotFoundException());
-      }
-      if (!checkDesiredPermissions(PERM_WRITE, permissions, entry, currentUser)) {
-        return Future.failedFuture(new NotFoundException());
-      }
+    return deleteEntry(id, null);
+  }
+
+  /**
+   * Delete settings entry if it has one of the given versions.
+   *
+   * @param id entry identifier
+   * @param versions expected versions; null for any
+   * @return async result; exception if not found, forbidden or of other version
+   */
+  public Future<Void> deleteEntry(UUID id, String[] versions) {
+    Tuple args = Tuple.of(id);
+    String writeLimit = getWriteLimitClause(permissions, currentUser, args);
+    // forbidden is reported as not found, so that existence is not revealed
+    if (writeLimit == null) {
+      return Future.failedFuture(new NotFoundException());
+    }
+    if (versions == null) {
       return pool.preparedQuery(
-              "DELETE FROM " + settingsTable + " WHERE id = $1")
-          .execute(Tuple.of(id))
+              "DELETE FROM " + settingsTable + " WHERE id = $1 AND (" + writeLimit + ")")
+          .execute(args)
           .map(res -> {
             if (res.rowCount() == 0) {
               throw new NotFoundException();
             }
             return null;
           });
-    });
+    }
+    args.addArrayOfString(versions);
+    return pool.preparedQuery(
+            "WITH old AS (SELECT (" + writeLimit + ") IS TRUE AS allowed FROM " + settingsTable
+                + " WHERE id = $1),"
+                + " del AS (DELETE FROM " + settingsTable + " WHERE id = $1 AND (" + writeLimit
+                + ") AND xmin::text = ANY($" + args.size() + ") RETURNING id)"
+                + " SELECT (SELECT allowed FROM old) AS allowed,"
+                + " (SELECT count(*) FROM del) AS deleted")
+        .execute(args)
+        .map(rowSet -> {
+          Row row = rowSet.iterator().next();
+          if (!Boolean.TRUE.equals(row.getBoolean("allowed"))) {
+            throw new NotFoundException();
+          }
+          if (row.getLong("deleted") == 0) {
+            throw new PreconditionFailedException();
+          }
+          return null;
+        });
   }
 
   /**
    * Update settings entry.
    *
+   * <p>Both the new entry and the stored entry must be writable. The stored entry
+   * is checked in the same statement as the update.
+   *
    * @param entry to be created
-   * @return async result with success if created; failed otherwise
+   * @return async result with new version if updated; failed otherwise
+   */
+  public Future<String> updateEntry(Entry entry) {
+    return updateEntry(entry, null);
+  }
+
+  /**
+   * Update settings entry if it has one of the given versions.
+   *
+   * @param entry new entry
+   * @param versions expected versions; null for any
+   * @return async result with new version if updated; failed otherwise
    */
-  public Future<Void> updateEntry(Entry entry) {
+  public Future<String> updateEntry(Entry entry, String[] versions) {
     if (!checkDesiredPermissions(PERM_WRITE, permissions, entry, currentUser)) {
       return Future.failedFuture(new ForbiddenException());
     }
+    Tuple args = Tuple.of(entry.getId(), entry.getScope(),
+        entry.getKey(), entry.getValue(),
+        entry.getUserId());
+    return updateStoredEntry("scope = $2, key = $3, value = $4, userId = $5", args, versions);
+  }
+
+  /**
+   * Patch value of settings entry.
+   *
+   * <p>The patch is applied in the database, so the stored value is not fetched.
+   *
+   * @param id entry identifier
+   * @param patch JSON Merge Patch (RFC 7396) for the entry; without id, scope, key, userId
+   * @param versions expected versions; null for any
+   * @return async result with new version; exception if not found or forbidden
+   */
+  public Future<String> patchEntry(UUID id, JsonObject patch, String[] versions) {
+    for (String immutable : List.of("id", "scope", "key", "userId")) {
+      if (patch.containsKey(immutable)) {
+        return Future.failedFuture(new UserException(immutable + " cannot be patched"));
+      }
+    }
+    if (getWriteLimitClause(permissions, currentUser, Tuple.tuple()) == null) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    return updateStoredEntry("value = " + pool.getSchema() + ".jsonb_merge_patch(value, $2)",
+        Tuple.of(id, patch), versions);
+  }
+
+  /**
+   * Update entry if the stored entry may be written, with one statement.
+   *
+   * @param set SET clause; $1 is the id
+   * @param args arguments of set; the write limit arguments are appended
+   * @param versions expected versions of stored entry; null for any
+   * @return async result with new version; NotFoundException if missing,
+   *     ForbiddenException if not writable, PreconditionFailedException if of other version
+   */
+  private Future<String> updateStoredEntry(String set, Tuple args, String[] versions) {
+    String writeLimit = getWriteLimitClause(permissions, currentUser, args);
+    String versionLimit = "";
+    if (versions != null) {
+      args.addArrayOfString(versions);
+      versionLimit = " AND xmin::text = ANY($" + args.size() + ")";
+    }
     return pool.preparedQuery(
-            "UPDATE " + settingsTable
-                + " SET scope = $2, key = $3, value = $4, userId = $5"
-                + " WHERE id = $1"
+            "WITH old AS (SELECT (" + writeLimit + ") IS TRUE AS allowed FROM " + settingsTable
+                + " WHERE id = $1),"
+                + " upd AS (UPDATE " + settingsTable + " SET " + set
+                + " WHERE id = $1 AND (" + writeLimit + ")" + versionLimit
+                + " RETURNING xmin::text AS version)"
+                + " SELECT (SELECT allowed FROM old) AS allowed,"
+                + " (SELECT version FROM upd) AS version"
         )
-        .execute(Tuple.of(entry.getId(), entry.getScope(),
-            entry.getKey(), entry.getValue(),
-            entry.getUserId()))
+        .execute(args)
         .map(rowSet -> {
-          if (rowSet.rowCount() == 0) {
+          Row row = rowSet.iterator().next();
+          Boolean allowed = row.getBoolean("allowed");
+          if (allowed == null) {
             throw new NotFoundException();
           }
-          return null;
+          if (!allowed) {
+            throw new ForbiddenException();
+          }
+          String version = row.getString("version");
+          if (version == null) {
+            if (versions != null) {
+              throw new PreconditionFailedException();
+            }
+            throw new NotFoundException();
+          }
+          return version;
         })
         .recover(e -> {
           if (e instanceof PgException pgException
@@ -293,34 +663,561 @@ public class SettingsStorage {
 
           }
           return Future.failedFuture(e);
-        })
+        });
+  }
+
+  /**
+   * Number of entries inserted, updated and left unchanged by an upload.
+   *
+   * @param inserted number of new entries
+   * @param updated number of existing entries that got a new value
+   * @param unchanged number of existing entries that already had the value
+   */
+  public record UpsertCounts(int inserted, int updated, int unchanged) {
+    UpsertCounts add(UpsertCounts other) {
+      return new UpsertCounts(inserted + other.inserted, updated + other.updated,
+          unchanged + other.unchanged);
+    }
+  }
+
+  /**
+   * Upsert settings entries.
+   *
+   * <p>Entries are written with one multi-row statement for global entries and one for
+   * user entries. Existing entries are only written if the value differs. If the same
+   * scope, key, userId is given more than once, the later entry wins and is counted
+   * again. All entries are written in one transaction.
+   *
+   * @param entries new entries or entries with new value
+   * @return async result with inserted and updated counts
+   */
+  public Future<UpsertCounts> upsertEntries(List<Entry> entries) {
+    List<List<Entry>> batches = new ArrayList<>();
+    Set<List<Object>> seen = new HashSet<>();
+    List<Entry> batch = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (entry.getId() != null) {
+        return Future.failedFuture(new UserException("No id must supplied for upload"));
+      }
+      entry.setId(UUID.randomUUID());
+      if (!checkDesiredPermissions(PERM_WRITE, permissions, entry, currentUser)) {
+        return Future.failedFuture(new ForbiddenException());
+      }
+      // a statement can not update the same row twice
+      if (!seen.add(Arrays.asList(entry.getScope(), entry.getKey(), entry.getUserId()))) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        seen.clear();
+        seen.add(Arrays.asList(entry.getScope(), entry.getKey(), entry.getUserId()));
+      }
+      batch.add(entry);
+    }
+    batches.add(batch);
+    long statements = batches.stream()
+        .mapToLong(b -> b.stream().map(e -> e.getUserId() == null).distinct().count())
+        .sum();
+    return pool.withTransaction(connection -> {
+      Future<UpsertCounts> future = Future.succeededFuture(new UpsertCounts(0, 0, 0));
+      if (statements > 1) {
+        // the change log lock is taken before any row is written, as a later
+        // statement could otherwise wait for rows of a writer that waits for the lock
+        future = connection.preparedQuery("SELECT pg_advisory_xact_lock(hashtext($1))")
+            .execute(Tuple.of(changesTable))
+            .map(new UpsertCounts(0, 0, 0));
+      }
+      for (List<Entry> b : batches) {
+        future = future
+            .compose(c -> upsertEntries(connection, b, false).map(c::add))
+            .compose(c -> upsertEntries(connection, b, true).map(c::add));
+      }
+      return future;
+    });
+  }
+
+  private Future<UpsertCounts> upsertEntries(SqlConnection connection, List<Entry> entries,
+      boolean users) {
+    List<Entry> list = entries.stream()
+        .filter(e -> (e.getUserId() != null) == users)
+        .toList();
+    if (list.isEmpty()) {
+      return Future.succeededFuture(new UpsertCounts(0, 0, 0));
+    }
+    Tuple args = Tuple.tuple()
+        .addArrayOfUUID(list.stream().map(Entry::getId).toArray(UUID[]::new))
+        .addArrayOfString(list.stream().map(Entry::getScope).toArray(String[]::new))
+        .addArrayOfString(list.stream().map(Entry::getKey).toArray(String[]::new))
+        .addArrayOfJsonObject(list.stream().map(Entry::getValue).toArray(JsonObject[]::new))
+        .addArrayOfUUID(list.stream().map(Entry::getUserId).toArray(UUID[]::new));
+    return connection.preparedQuery(
+            "INSERT INTO " + settingsTable + " AS s"
+                + " (id, scope, key, value, userId)"
+                + " SELECT * FROM unnest($1::uuid[], $2::varchar[], $3::varchar[],"
+                + " $4::jsonb[], $5::uuid[]) "
+                + getOnConflictClause(list.get(0)) + " DO UPDATE SET value = EXCLUDED.value"
+                // an identical value is not written and the row is not returned
+                + " WHERE s.value IS DISTINCT FROM EXCLUDED.value"
+                // xmax is zero for a row version that was inserted rather than updated
+                + " RETURNING (xmax = 0) AS inserted"
+        )
+        .execute(args)
+        .map(rowSet -> {
+          int inserted = 0;
+          for (Row row : rowSet) {
+            if (Boolean.TRUE.equals(row.getBoolean("inserted"))) {
+              inserted++;
+            }
+          }
+          return new UpsertCounts(inserted, rowSet.rowCount() - inserted,
+              list.size() - rowSet.rowCount());
+        });
+  }
+
+  /**
+   * Receives entries for {@link #bulkUpsert(Function)}.
+   */
+  public interface EntrySink {
+    /**
+     * Load entries into the staging table.
+     *
+     * @param entries new entries or entries with new value
+     * @return async result; failure if an entry is invalid or forbidden
+     */
+    Future<Void> write(List<Entry> entries);
+  }
+
+  /**
+   * Upsert a large number of entries in one transaction.
+   *
+   * <p>Entries are loaded into a temporary table and then merged into the settings
+   * table with one statement. Nothing is written if any entry is invalid or forbidden.
+   * Existing entries are only written if the value differs.
+   * If the same scope, key, userId is given more than once, the last entry wins and
+   * is counted once.
+   *
+   * @param producer writes all entries to the sink; returns when done
+   * @return async result with inserted and updated counts
+   */
+  public Future<UpsertCounts> bulkUpsert(Function<EntrySink, Future<Void>> producer) {
+    return pool.withTransaction(connection -> connection.query(
+            "CREATE TEMP TABLE settings_load"
+                + " (seq bigserial, id uuid, scope VARCHAR, key VARCHAR, value JSONB, userId uuid)"
+                + " ON COMMIT DROP").execute()
+        .compose(x -> producer.apply(entries -> loadEntries(connection, entries)))
+        .compose(x -> connection.query(
+            "WITH src AS (SELECT DISTINCT ON (scope, key, userId) * FROM settings_load"
+                + " ORDER BY scope, key, userId, seq DESC),"
+                + " g AS (INSERT INTO " + settingsTable + " AS s (id, scope, key, value, userId)"
+                + " SELECT id, scope, key, value, userId FROM src WHERE userId IS NULL"
+                + " ON CONFLICT (scope, key) WHERE userId is NULL"
+                + " DO UPDATE SET value = EXCLUDED.value"
+                + " WHERE s.value IS DISTINCT FROM EXCLUDED.value"
+                + " RETURNING (xmax = 0) AS inserted),"
+                + " u AS (INSERT INTO " + settingsTable + " AS s (id, scope, key, value, userId)"
+                + " SELECT id, scope, key, value, userId FROM src WHERE userId IS NOT NULL"
+                + " ON CONFLICT (scope, key, userId) WHERE userId is NOT NULL"
+                + " DO UPDATE SET value = EXCLUDED.value"
+                + " WHERE s.value IS DISTINCT FROM EXCLUDED.value"
+                + " RETURNING (xmax = 0) AS inserted)"
+                + " SELECT count(*) FILTER (WHERE inserted) AS inserted,"
+                + " count(*) FILTER (WHERE NOT inserted) AS updated,"
+                + " (SELECT count(*) FROM src) AS total"
+                + " FROM (SELECT inserted FROM g UNION ALL SELECT inserted FROM u) r").execute())
+        .map(rowSet -> {
+          Row row = rowSet.iterator().next();
+          int inserted = row.getInteger("inserted");
+          int updated = row.getInteger("updated");
+          return new UpsertCounts(inserted, updated,
+              row.getInteger("total") - inserted - updated);
+        }));
+  }
+
+  private Future<Void> loadEntries(SqlConnection connection, List<Entry> entries) {
+    for (Entry entry : entries) {
+      if (entry.getId() != null) {
+        return Future.failedFuture(new UserException("No id must supplied for upload"));
+      }
+      entry.setId(UUID.randomUUID());
+      if (!checkDesiredPermissions(PERM_WRITE, permissions, entry, currentUser)) {
+        return Future.failedFuture(new ForbiddenException());
+      }
+    }
+    Tuple args = Tuple.tuple()
+        .addArrayOfUUID(entries.stream().map(Entry::getId).toArray(UUID[]::new))
+        .addArrayOfString(entries.stream().map(Entry::getScope).toArray(String[]::new))
+        .addArrayOfString(entries.stream().map(Entry::getKey).toArray(String[]::new))
+        .addArrayOfJsonObject(entries.stream().map(Entry::getValue).toArray(JsonObject[]::new))
+        .addArrayOfUUID(entries.stream().map(Entry::getUserId).toArray(UUID[]::new));
+    return connection.preparedQuery(
+            "INSERT INTO settings_load (id, scope, key, value, userId)"
+                + " SELECT id, scope, key, value, userId FROM unnest($1::uuid[], $2::varchar[],"
+                + " $3::varchar[], $4::jsonb[], $5::uuid[])"
+                + " WITH ORDINALITY AS t(id, scope, key, value, userId, n) ORDER BY n")
+        .execute(args)
         .mapEmpty();
   }
 
   /**
-   * Upsert settings entry.
-   * @param entry new entry or entry with new value
-   * @return async result with true if inserted; false if updated
+   * Look up entries by scope, key and userId.
+   *
+   * <p>All keys are looked up with one query. Entries that do not exist or that may
+   * not be read are left out of the result.
+   *
+   * @param keys entries with scope, key and optional userId; null userId for global entry
+   * @return async result with entries found
    */
-  public Future<Boolean> upsertEntry(Entry entry) {
-    if (entry.getId() != null) {
-      return Future.failedFuture(new UserException("No id must supplied for upload"));
+  public Future<List<Entry>> lookupEntries(List<Entry> keys) {
+    Tuple args = Tuple.tuple();
+    String readLimit = getReadLimitClause(permissions, currentUser, args);
+    if (readLimit == null) {
+      return Future.failedFuture(new ForbiddenException());
     }
-    entry.setId(UUID.randomUUID());
-    if (!checkDesiredPermissions(PERM_WRITE, permissions, entry, currentUser)) {
+    Set<List<Object>> distinct = new LinkedHashSet<>();
+    keys.forEach(k -> distinct.add(Arrays.asList(k.getScope(), k.getKey(), k.getUserId())));
+    int n = args.size();
+    args.addArrayOfString(distinct.stream().map(k -> (String) k.get(0)).toArray(String[]::new));
+    args.addArrayOfString(distinct.stream().map(k -> (String) k.get(1)).toArray(String[]::new));
+    args.addArrayOfUUID(distinct.stream().map(k -> (UUID) k.get(2)).toArray(UUID[]::new));
+    return pool.preparedQuery(
+            "SELECT s.* FROM unnest($" + (n + 1) + "::varchar[], $" + (n + 2)
+                + "::varchar[], $" + (n + 3) + "::uuid[]) AS l(lscope, lkey, luserid)"
+                + " JOIN " + settingsTable + " s ON s.scope = l.lscope AND s.key = l.lkey"
+                + " AND (s.userId = l.luserid OR (s.userId IS NULL AND l.luserid IS NULL))"
+                + " WHERE " + readLimit)
+        .execute(args)
+        .map(rowSet -> {
+          List<Entry> entries = new ArrayList<>();
+          rowSet.forEach(row -> entries.add(fromRow(row)));
+          return entries;
+        });
+  }
+
+  /**
+   * Get effective entries: the entry of the current user if there is one, else the
+   * entry without userId.
+   *
+   * <p>Both candidates for all keys are read with one statement. Only entries that may
+   * be read are candidates, so an entry of the user that may not be read does not
+   * hide the entry without userId.
+   *
+   * @param scope scope of entries
+   * @param keys keys within scope
+   * @return async result with entries found that may be read, ordered by key;
+   *     ForbiddenException if no entries may be read
+   */
+  public Future<List<Entry>> getEffectiveEntries(String scope, List<String> keys) {
+    Tuple args = Tuple.tuple();
+    String readLimit = getReadLimitClause(permissions, currentUser, args);
+    if (readLimit == null) {
       return Future.failedFuture(new ForbiddenException());
     }
+    int n = args.size();
+    args.addString(scope);
+    args.addArrayOfString(keys.toArray(new String[0]));
+    args.addUUID(currentUser);
     return pool.preparedQuery(
-            "INSERT INTO " + settingsTable
-                + "(id, scope, key, value, userId)"
-                + " VALUES ($1, $2, $3, $4, $5)"
-              + getOnConflictClause(entry) + " DO UPDATE SET value = $4"
-              + " RETURNING id"
-        )
-        .execute(Tuple.of(entry.getId(), entry.getScope(),
-            entry.getKey(), entry.getValue(),
-            entry.getUserId()))
-        .map(rowSet -> rowSet.iterator().next().getUUID("id").equals(entry.getId()));
+            "SELECT DISTINCT ON (key) * FROM " + settingsTable
+                + " WHERE scope = $" + (n + 1) + " AND key = ANY($" + (n + 2) + ")"
+                + " AND (userId IS NULL OR userId = $" + (n + 3) + ")"
+                + " AND (" + readLimit + ")"
+                + " ORDER BY key, userId NULLS LAST")
+        .execute(args)
+        .map(rowSet -> {
+          List<Entry> entries = new ArrayList<>();
+          rowSet.forEach(row -> {
+            Entry entry = fromRow(row);
+            if (checkDesiredPermissions(PERM_READ, permissions, entry, currentUser)) {
+              entries.add(entry);
+            }
+          });
+          return entries;
+        });
+  }
+
+  /**
+   * Get entries of the current user that the current user may read.
+   *
+   * @return async result with entries ordered by scope and key; ForbiddenException
+   *     if no entries may be read
+   */
+  public Future<List<Entry>> getOwnEntries() {
+    Tuple args = Tuple.tuple();
+    String readLimit = getReadLimitClause(permissions, currentUser, args);
+    if (readLimit == null) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    int n = args.size();
+    args.addUUID(currentUser);
+    return pool.preparedQuery(
+            "SELECT id, scope, key, value, userId FROM " + settingsTable
+                + " WHERE userId = $" + (n + 1) + " AND (" + readLimit + ")"
+                + " ORDER BY scope, key")
+        .execute(args)
+        .map(rowSet -> {
+          List<Entry> entries = new ArrayList<>();
+          rowSet.forEach(row -> entries.add(fromRow(row)));
+          return entries;
+        });
+  }
+
+  /**
+   * Get version of the entries in a scope that the current user may read.
+   *
+   * <p>The version changes whenever an entry in the scope is written. It also
+   * depends on the rights of the current user for the scope, as these determine
+   * which entries are part of {@link #getScope(String)}.
+   *
+   * @param scope scope of entries
+   * @return async result with version; ForbiddenException if scope may not be read
+   */
+  public Future<String> getScopeVersion(String scope) {
+    int rights = permissions.rights(scope)
+        & (PermissionIndex.GLOBAL_READ | PermissionIndex.USERS_READ | PermissionIndex.OWNER_READ);
+    if (rights == 0) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    return pool.preparedQuery("SELECT version FROM " + scopeVersionTable + " WHERE scope = $1")
+        .execute(Tuple.of(scope))
+        .map(rowSet -> {
+          long version = rowSet.size() == 0 ? 0 : rowSet.iterator().next().getLong("version");
+          String tag = version + "-" + rights;
+          if (currentUser != null && (rights & PermissionIndex.GLOBAL_READ) != rights) {
+            tag = tag + "-" + currentUser;
+          }
+          return tag;
+        });
+  }
+
+  /**
+   * Smallest string after all strings that start with prefix, in byte order.
+   *
+   * @param prefix non-empty prefix
+   * @return end of range; null if the incremented last char of prefix would be a
+   *     surrogate or come after them, as a lone surrogate is not valid UTF-8
+   */
+  static String prefixEnd(String prefix) {
+    char last = prefix.charAt(prefix.length() - 1);
+    if (last + 1 >= Character.MIN_SURROGATE) {
+      return null;
+    }
+    return prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+  }
+
+  /**
+   * Get keys of entries in a scope that the current user may read.
+   *
+   * <p>Values are not read: each kind of entry that may be read is read with an
+   * index-only scan of the unique index on scope and key for that kind.
+   *
+   * @param scope scope of entries
+   * @param prefix only keys that start with this
+   * @param after only keys, or segments, after this in byte order; null for first page
+   * @param segments false to return keys; true to return the number of keys for
+   *     each segment of the keys after the prefix up to the next dot
+   * @param limit maximum number of keys or segments returned
+   * @return async result with keys, or objects with segment and count, in byte
+   *     order; ForbiddenException if scope may not be read
+   */
+  public Future<JsonArray> getKeys(String scope, String prefix, String after,
+      boolean segments, int limit) {
+    int rights = permissions.rights(scope);
+    Tuple args = Tuple.of(scope);
+    StringBuilder cond = new StringBuilder(" AND scope = $1");
+    if (!prefix.isEmpty()) {
+      args.addString(prefix);
+      cond.append(" AND key ~>=~ $").append(args.size())
+          .append(" AND starts_with(key, $").append(args.size()).append(")");
+      String end = prefixEnd(prefix);
+      if (end != null) {
+        // end of range, so the index scan stops after the prefix
+        args.addString(end);
+        cond.append(" AND key ~<~ $").append(args.size());
+      }
+    }
+    if (after != null && !segments) {
+      args.addString(after);
+      cond.append(" AND key ~>~ $").append(args.size());
+    }
+    List<String> selects = new ArrayList<>();
+    if ((rights & PermissionIndex.GLOBAL_READ) != 0) {
+      selects.add("SELECT key FROM " + settingsTable + " WHERE userId IS NULL" + cond);
+    }
+    if ((rights & PermissionIndex.USERS_READ) != 0) {
+      selects.add("SELECT key FROM " + settingsTable + " WHERE userId IS NOT NULL" + cond);
+    } else if ((rights & PermissionIndex.OWNER_READ) != 0 && currentUser != null) {
+      args.addUUID(currentUser);
+      selects.add("SELECT key FROM " + settingsTable + " WHERE userId = $" + args.size()
+          + cond);
+    }
+    if (selects.isEmpty()) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    String keys = String.join(" UNION ", selects);
+    String sql;
+    if (segments) {
+      String segmentAfter = "";
+      if (after != null) {
+        args.addString(after);
+        segmentAfter = " WHERE segment ~>~ $" + args.size();
+      }
+      args.addInteger(limit);
+      String rest = prefix.isEmpty() ? "key" : "substr(key, char_length($2) + 1)";
+      sql = "SELECT segment, count(*) AS count FROM"
+          + " (SELECT split_part(" + rest + ", '.', 1) AS segment"
+          + " FROM (" + keys + ") k) s" + segmentAfter
+          + " GROUP BY segment ORDER BY segment COLLATE \"C\" LIMIT $" + args.size();
+    } else {
+      args.addInteger(limit);
+      sql = keys + " ORDER BY key COLLATE \"C\" LIMIT $" + args.size();
+    }
+    return pool.preparedQuery(sql)
+        .execute(args)
+        .map(rowSet -> {
+          JsonArray result = new JsonArray();
+          rowSet.forEach(row -> result.add(segments
+              ? new JsonObject()
+                  .put("segment", row.getString("segment"))
+                  .put("count", row.getLong("count"))
+              : row.getString("key")));
+          return result;
+        });
+  }
+
+  /**
+   * Get values of the entries in a scope that the current user may read.
+   *
+   * <p>Only entries without userId and entries of the current user are returned,
+   * as values of other users would have the same keys.
+   *
+   * @param scope scope of entries
+   * @return async result with scope, global and user properties, each of the latter
+   *     mapping key to value; ForbiddenException if scope may not be read
+   */
+  public Future<JsonObject> getScope(String scope) {
+    Tuple args = Tuple.tuple();
+    String readLimit = getReadLimitClause(permissions, currentUser, args);
+    if (readLimit == null) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    int n = args.size();
+    args.addString(scope);
+    args.addUUID(currentUser);
+    return pool.preparedQuery(
+            "SELECT key, userId, (value->'value')::text AS value FROM " + settingsTable
+                + " WHERE scope = $" + (n + 1) + " AND (userId IS NULL OR userId = $" + (n + 2)
+                + ") AND (" + readLimit + ") ORDER BY key")
+        .execute(args)
+        .map(rowSet -> {
+          JsonObject global = new JsonObject();
+          JsonObject user = new JsonObject();
+          rowSet.forEach(row -> {
+            String value = row.getString("value");
+            (row.getUUID("userid") == null ? global : user).put(row.getString("key"),
+                value == null ? null : Json.decodeValue(value));
+          });
+          return new JsonObject()
+              .put("scope", scope)
+              .put("global", global)
+              .put("user", user);
+        });
+  }
+
+  /**
+   * Changes of entries that the current user may read.
+   *
+   * @param items changes with seq, op, id, scope, key and userId
+   * @param last sequence number to pass as since to get the following changes
+   */
+  public record Changes(JsonArray items, long last) {}
+
+  static JsonObject changeFromRow(Row row) {
+    JsonObject change = new JsonObject()
+        .put("seq", row.getLong("seq"))
+        .put("op", row.getString("op"))
+        .put("id", row.getUUID("id").toString())
+        .put("scope", row.getString("scope"))
+        .put("key", row.getString("key"));
+    UUID userId = row.getUUID("userid");
+    if (userId != null) {
+      change.put("userId", userId.toString());
+    }
+    return change;
+  }
+
+  /**
+   * Get changes after a sequence number.
+   *
+   * @param since sequence number of last change seen; null for none, which just
+   *     returns the current sequence number
+   * @param limit maximum number of changes returned
+   * @return async result with changes; GoneException if changes after since have
+   *     been removed from the change log
+   */
+  public Future<Changes> getChanges(Long since, int limit) {
+    Tuple args = Tuple.tuple();
+    String readLimit = getReadLimitClause(permissions, currentUser, args);
+    if (readLimit == null) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    int n = args.size();
+    args.addLong(since == null ? Long.MAX_VALUE : since);
+    args.addInteger(since == null ? 0 : limit);
+    // min and max are read in the same snapshot as the changes
+    return pool.preparedQuery(
+            "WITH c AS (SELECT seq, op, id, scope, key, userId FROM " + changesTable
+                + " WHERE seq > $" + (n + 1) + " AND (" + readLimit + ")"
+                + " ORDER BY seq LIMIT $" + (n + 2) + ")"
+                + " SELECT m.min_seq, m.max_seq, c.* FROM (SELECT min(seq) AS min_seq,"
+                + " max(seq) AS max_seq FROM " + changesTable + ") m"
+                + " LEFT JOIN c ON true ORDER BY c.seq")
+        .execute(args)
+        .map(rowSet -> {
+          JsonArray items = new JsonArray();
+          Long minSeq = null;
+          long maxSeq = 0;
+          for (Row row : rowSet) {
+            minSeq = row.getLong("min_seq");
+            maxSeq = row.getLong("max_seq") == null ? 0 : row.getLong("max_seq");
+            if (row.getLong("seq") != null) {
+              items.add(changeFromRow(row));
+            }
+          }
+          if (since == null) {
+            return new Changes(items, maxSeq);
+          }
+          // sequence numbers of rolled back writes are never used, so this may also
+          // fail a client that is just behind the oldest change
+          if (minSeq != null && since < minSeq - 1) {
+            throw new GoneException("Changes after " + since + " are no longer available");
+          }
+          if (items.size() < limit) {
+            return new Changes(items, Math.max(since, maxSeq));
+          }
+          return new Changes(items, items.getJsonObject(items.size() - 1).getLong("seq"));
+        });
+  }
+
+  /**
+   * Subscribe to changes of entries that the current user may read.
+   *
+   * @param scopes scopes of interest; empty for all
+   * @param handler gets each change, as returned by {@link #getChanges(Long, int)}
+   * @return async result with action that unsubscribes; ForbiddenException if no
+   *     entries may be read
+   */
+  public Future<Runnable> subscribeChanges(Set<String> scopes, Consumer<JsonObject> handler) {
+    if (getReadLimitClause(permissions, currentUser, Tuple.tuple()) == null) {
+      return Future.failedFuture(new ForbiddenException());
+    }
+    return ChangeFeed.subscribe(vertx, pool, changesTable, change -> {
+      Entry entry = new Entry();
+      entry.setScope(change.getString("scope"));
+      String userId = change.getString("userId");
+      entry.setUserId(userId == null ? null : UUID.fromString(userId));
+      if ((scopes.isEmpty() || scopes.contains(entry.getScope()))
+          && checkDesiredPermissions(PERM_READ, permissions, entry, currentUser)) {
+        handler.accept(change);
+      }
+    });
   }
 
   /**
@@ -330,34 +1227,89 @@ public class SettingsStorage {
    * @param cqlQuery  CQL cqlQuery; null if no cqlQuery is provided
    * @param offset starting offset of entries returned
    * @param limit  maximum number of entries returned
+   * @param after  keyset token from resultInfo.next; empty for first page;
+   *               null for offset based paging
+   * @param totalRecords how to compute resultInfo.totalRecords
    * @return async result
    */
   public Future<Void> getEntries(HttpServerResponse response, String cqlQuery,
-      int offset, int limit) {
-    List<String> queryLimits = getCqlLimitPermissions(permissions, currentUser);
-    if (queryLimits.isEmpty()) {
+      int offset, int limit, String after, TotalRecords totalRecords) {
+    Tuple countArgs = Tuple.tuple();
+    String readLimit = getReadLimitClause(permissions, currentUser, countArgs);
+    if (readLimit == null) {
       return Future.failedFuture(new ForbiddenException());
     }
-    String joinedCql = String.join(" or ", queryLimits);
-
-    PgCqlDefinition definition = PgCqlDefinition.create();
-    definition.addField("id", new PgCqlFieldUuid());
-    definition.addField("scope", new PgCqlFieldText().withExact());
-    definition.addField("key", new PgCqlFieldText().withLikeOps());
-    definition.addField("userId", new PgCqlFieldUuid());
-
-    PgCqlQuery pgCqlQuery = definition.parse(cqlQuery, joinedCql);
-    String sqlOrderBy = pgCqlQuery.getOrderByClause();
-    String from = settingsTable + " WHERE" + pgCqlQuery.getWhereClause();
-    String sqlQuery = "SELECT * FROM " + from
-        + (sqlOrderBy == null ? "" : " ORDER BY " + sqlOrderBy)
-        + " LIMIT " + limit + " OFFSET " + offset;
-
+    CqlCache.Translation cql = CQL_CACHE.translate(cqlQuery);
+    String sqlOrderBy = cql.orderBy();
+    String where = cql.where();
+    String from = settingsTable + " WHERE (" + readLimit + ")"
+        + (where == null ? "" : " AND (" + where + ")");
+    Tuple args = Tuple.tuple();
+    for (int i = 0; i < countArgs.size(); i++) {
+      args.addValue(countArgs.getValue(i));
+    }
+    if (after == null) {
+      String sqlQuery = SELECT_JSON + " FROM " + from
+          + (sqlOrderBy == null ? "" : " ORDER BY " + sqlOrderBy)
+          + " LIMIT $" + (args.size() + 1) + " OFFSET $" + (args.size() + 2);
+      args.addLong((long) limit);
+      args.addLong((long) offset);
+      log.debug("SQL: {}", sqlQuery);
+      return sendEntries(response, sqlQuery, args,
+          conn -> totalRecords.count(conn, from, countArgs),
+          totalRecords, Integer.MAX_VALUE, null);
+    }
+    if (sqlOrderBy != null) {
+      return Future.failedFuture(new UserException("after cannot be combined with sortBy"));
+    }
+    if (offset != 0) {
+      return Future.failedFuture(new UserException("after cannot be combined with offset"));
+    }
+    EntryCursor cursor = EntryCursor.decode(after);
+    String sqlQuery = SELECT_JSON + " FROM " + from
+        + (cursor == null ? "" : " AND " + cursor.seekClause(args))
+        + " ORDER BY " + EntryCursor.ORDER_BY
+        + " LIMIT $" + (args.size() + 1);
+    args.addLong(limit + 1L);
     log.debug("SQL: {}", sqlQuery);
-    String countQuery = "SELECT COUNT(*) FROM " + from;
+    return sendEntries(response, sqlQuery, args,
+        conn -> totalRecords.count(conn, from, countArgs),
+        totalRecords, limit, row -> EntryCursor.fromRow(row).encode());
+  }
+
+  /**
+   * Send result of settings query.
+   *
+   * <p>The result is streamed to the response. Identical requests that arrive before
+   * {@link #SHARED_MAX_BYTES} of it have been written join the response and get the
+   * same rows instead of running the query again; the key is the SQL and its
+   * arguments, which include tenant schema and readable scopes.
+   */
+  private Future<Void> sendEntries(HttpServerResponse response, String sqlQuery, Tuple args,
+      Function<SqlConnection, Future<Integer>> counter, TotalRecords totalRecords,
+      int limit, Function<Row, String> nextMapper) {
+    List<Object> values = new ArrayList<>(args.size());
+    for (int i = 0; i < args.size(); i++) {
+      Object value = args.getValue(i);
+      values.add(value instanceof Object[] array ? Arrays.asList(array) : value);
+    }
+    EntriesKey key = new EntriesKey(sqlQuery, values, totalRecords);
+    ResponseGroup shared = SHARED_ENTRIES.get(key);
+    if (shared != null) {
+      Future<Void> joined = shared.join(response);
+      if (joined != null) {
+        SHARED_QUERIES.incrementAndGet();
+        return joined;
+      }
+    }
+    ResponseGroup responses = new ResponseGroup(response, SHARED_MAX_BYTES);
+    SHARED_ENTRIES.put(key, responses);
+    responses.fullHandler(() -> SHARED_ENTRIES.remove(key, responses));
     return pool.withTransaction(
-        connection -> StreamHelper.streamResult(response, connection, sqlQuery, countQuery,
-            "items", (resp, row) -> resp.write(JsonObject.mapFrom(fromRow(row)).encode())));
+        connection -> StreamHelper.streamResult(responses, connection, sqlQuery, args,
+            counter, "items", (buf, row) -> buf.appendBuffer(row.getBuffer("json")),
+            limit, nextMapper))
+        .onComplete(x -> SHARED_ENTRIES.remove(key, responses));
   }
 
 }
@@ -2,14 +2,19 @@ package org.folio.settings.server.storage;
 
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
-import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Cursor;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -23,67 +28,228 @@ public final class StreamHelper {
   private StreamHelper() { }
 
   /**
-   * Stream rows from a SQL query to the HTTP response as a JSON array.
+   * Rows are collected in a buffer that is written to the response when it reaches
+   * this size. Can be set with system property stream.flush.size.
+   */
+  static final int FLUSH_SIZE = Integer.getInteger("stream.flush.size", 16384);
+
+  /**
+   * Number of rows fetched from the database at a time.
+   */
+  private static final int FETCH_SIZE = 100;
+
+  private static final class Page {
+    private final Buffer buffer;
+    private int count;
+    private Row lastRow;
+    private String next;
+
+    Page(String property) {
+      buffer = Buffer.buffer().appendString("{ \"" + property + "\" : [");
+    }
+  }
+
+  /**
+   * Stream rows from a SQL query to the HTTP response as a JSON array with keyset paging.
+   *
+   * <p>The select query should fetch one row more than limit. If that extra row is
+   * returned, it is not written; instead the last written row is passed to
+   * nextMapper and the result is returned as resultInfo.next.
+   *
+   * <p>Rows are written in chunks of about {@link #FLUSH_SIZE} bytes. The SQL stream
+   * is paused while the write queue of the response is full, so a slow client
+   * does not make the whole result pile up in memory. If the response is closed
+   * or fails, the SQL stream is closed and the result fails, so the connection
+   * is released.
    *
    * @param response   HTTP response to write to
    * @param connection SQL connection to use
    * @param selectQuery SQL SELECT query
-   * @param countQuery  SQL COUNT query for totalRecords
+   * @param selectArgs  arguments for selectQuery
+   * @param counter    computes totalRecords; null result omits totalRecords
    * @param property   JSON property name for the array (e.g. "items", "addresses")
-   * @param rowMapper  maps each row to the response
+   * @param rowMapper  appends JSON for each row to the buffer
+   * @param limit      maximum number of rows written
+   * @param nextMapper maps last row to next page token; null for no token
    */
   public static Future<Void> streamResult(
       HttpServerResponse response, SqlConnection connection,
-      String selectQuery, String countQuery,
-      String property, BiConsumer<HttpServerResponse, Row> rowMapper) {
+      String selectQuery, Tuple selectArgs, Function<SqlConnection, Future<Integer>> counter,
+      String property, BiConsumer<Buffer, Row> rowMapper,
+      int limit, Function<Row, String> nextMapper) {
+    return streamResult(new ResponseGroup(response, 0), connection,
+        selectQuery, selectArgs, counter, property, rowMapper, limit, nextMapper);
+  }
+
+  /**
+   * Stream rows from a SQL query to a group of HTTP responses like
+   * {@link #streamResult(HttpServerResponse, SqlConnection, String, Tuple, Function,
+   * String, BiConsumer, int, Function)}.
+   *
+   * <p>The SQL stream is paused while the write queue of any response is full, and
+   * closed when all responses have been closed.
+   */
+  public static Future<Void> streamResult(
+      ResponseGroup responses, SqlConnection connection,
+      String selectQuery, Tuple selectArgs, Function<SqlConnection, Future<Integer>> counter,
+      String property, BiConsumer<Buffer, Row> rowMapper,
+      int limit, Function<Row, String> nextMapper) {
     var promise = Promise.<Void>promise();
-    var sqlStreamFetchSize = 100;
     connection.prepare(selectQuery)
-        .onFailure(promise::fail)
+        .onFailure(e -> {
+          responses.fail(e);
+          promise.fail(e);
+        })
         .onSuccess(pq -> {
-          response.setChunked(true);
-          response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-          response.write("{ \"" + property + "\" : [");
-          var first = new AtomicBoolean(true);
-          var stream = pq.createStream(sqlStreamFetchSize);
+          responses.start();
+          var buffer = new AtomicReference<>(Buffer.buffer(FLUSH_SIZE)
+              .appendString("{ \"" + property + "\" : ["));
+          var count = new AtomicInteger();
+          var lastRow = new AtomicReference<Row>();
+          var next = new AtomicReference<String>();
+          var stream = pq.createStream(FETCH_SIZE, selectArgs);
+          // done is set once the result is settled; later events are ignored
+          var done = new AtomicBoolean();
+          var ended = new AtomicBoolean();
+          responses.closeHandler(e -> {
+            if (done.compareAndSet(false, true)) {
+              log.warn("response error: {}", e.getMessage());
+              if (!ended.get()) {
+                stream.close().onComplete(x -> pq.close());
+              }
+              promise.fail(e);
+            }
+          });
           stream.handler(row -> {
-            if (!first.getAndSet(false)) {
-              response.write(",");
+            int no = count.incrementAndGet();
+            if (no > limit) {
+              if (nextMapper != null && lastRow.get() != null && next.get() == null) {
+                next.set(nextMapper.apply(lastRow.get()));
+              }
+              return;
+            }
+            if (no > 1) {
+              buffer.get().appendString(",");
             }
-            rowMapper.accept(response, row);
+            rowMapper.accept(buffer.get(), row);
+            lastRow.set(row);
+            if (buffer.get().length() >= FLUSH_SIZE) {
+              // the responses own a written buffer until it is sent
+              responses.write(buffer.getAndSet(Buffer.buffer(FLUSH_SIZE)));
+              if (responses.writeQueueFull()) {
+                stream.pause();
+                responses.drainHandler(v -> stream.resume());
+              }
+            }
+          });
+          stream.endHandler(end -> {
+            if (done.get() || !ended.compareAndSet(false, true)) {
+              return;
+            }
+            stream.close()
+                .compose(x -> pq.close())
+                .compose(x -> counter.apply(connection))
+                .onComplete(ar -> {
+                  if (!done.compareAndSet(false, true)) {
+                    return;
+                  }
+                  if (ar.succeeded()) {
+                    responses.end(appendFooter(buffer.get(), ar.result(), next.get(), null));
+                    promise.complete();
+                  } else {
+                    log.error("get total records error: {}", ar.cause().getMessage(), ar.cause());
+                    responses.end(appendFooter(buffer.get(), null, null, ar.cause().getMessage()));
+                    promise.fail(ar.cause());
+                  }
+                });
           });
-          stream.endHandler(end -> stream.close()
-              .compose(x -> pq.close())
-              .compose(x -> connection.query(countQuery).execute()
-                  .map(rs -> rs.iterator().next().getInteger(0)))
-              .onSuccess(totalRecords -> {
-                resultFooter(response, totalRecords, null);
-                promise.complete();
-              })
-              .onFailure(f -> {
-                log.error("get total records error: {}", f.getMessage(), f);
-                resultFooter(response, null, f.getMessage());
-                promise.fail(f);
-              }));
           stream.exceptionHandler(e -> {
+            if (!done.compareAndSet(false, true)) {
+              return;
+            }
             log.error("stream error: {}", e.getMessage(), e);
-            resultFooter(response, null, e.getMessage());
+            if (ended.compareAndSet(false, true)) {
+              stream.close().onComplete(x -> pq.close());
+            }
+            responses.end(appendFooter(buffer.get(), null, null, e.getMessage()));
             promise.fail(e);
           });
         });
     return promise.future();
   }
 
-  private static void resultFooter(
-      HttpServerResponse response, Integer totalRecords, String diagnostic) {
+  /**
+   * Run a SQL query and render the rows as JSON like {@link #streamResult}.
+   *
+   * <p>The whole result is kept in memory, so it may be cached or sent to more than
+   * one response; use it for small tables only.
+   *
+   * @param connection SQL connection to use
+   * @param selectQuery SQL SELECT query
+   * @param selectArgs  arguments for selectQuery
+   * @param counter    computes totalRecords; null result omits totalRecords
+   * @param property   JSON property name for the array (e.g. "items", "addresses")
+   * @param rowMapper  appends JSON for each row to the buffer
+   * @param limit      maximum number of rows rendered
+   * @param nextMapper maps last row to next page token; null for no token
+   * @return async result with JSON response body
+   */
+  public static Future<Buffer> bufferResult(
+      SqlConnection connection, String selectQuery, Tuple selectArgs,
+      Function<SqlConnection, Future<Integer>> counter,
+      String property, BiConsumer<Buffer, Row> rowMapper,
+      int limit, Function<Row, String> nextMapper) {
+    return connection.prepare(selectQuery).compose(pq -> {
+      Cursor cursor = pq.cursor(selectArgs);
+      var page = new Page(property);
+      return bufferRows(cursor, page, rowMapper, limit, nextMapper)
+          .compose(x -> cursor.close())
+          .compose(x -> pq.close())
+          .compose(x -> counter.apply(connection))
+          .map(totalRecords -> appendFooter(page.buffer, totalRecords, page.next, null));
+    });
+  }
+
+  /**
+   * Render rows of cursor until limit is passed or there are no more rows.
+   */
+  private static Future<Void> bufferRows(Cursor cursor, Page page,
+      BiConsumer<Buffer, Row> rowMapper, int limit, Function<Row, String> nextMapper) {
+    return cursor.read(FETCH_SIZE).compose(rowSet -> {
+      for (Row row : rowSet) {
+        if (++page.count > limit) {
+          if (nextMapper != null && page.lastRow != null) {
+            page.next = nextMapper.apply(page.lastRow);
+          }
+          return Future.<Void>succeededFuture();
+        }
+        if (page.count > 1) {
+          page.buffer.appendString(",");
+        }
+        rowMapper.accept(page.buffer, row);
+        page.lastRow = row;
+      }
+      if (!cursor.hasMore()) {
+        return Future.<Void>succeededFuture();
+      }
+      return bufferRows(cursor, page, rowMapper, limit, nextMapper);
+    });
+  }
+
+  private static Buffer appendFooter(Buffer buffer,
+      Integer totalRecords, String next, String diagnostic) {
     var resultInfo = new JsonObject();
-    resultInfo.put("totalRecords", totalRecords);
+    if (totalRecords != null) {
+      resultInfo.put("totalRecords", totalRecords);
+    }
+    if (next != null) {
+      resultInfo.put("next", next);
+    }
     var diagnostics = new JsonArray();
     if (diagnostic != null) {
       diagnostics.add(new JsonObject().put("message", diagnostic));
     }
     resultInfo.put("diagnostics", diagnostics);
-    response.write("], \"resultInfo\": " + resultInfo.encode() + "}");
-    response.end();
+    return buffer.appendString("], \"resultInfo\": " + resultInfo.encode() + "}");
   }
 }
@@ -7,6 +7,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClient;
@@ -36,6 +38,9 @@ public class TenantAddressesStorage {
   private static final SemVer SEM_VER_1_3_0 = new SemVer("1.3.0");
   private static final String TENANT_ADDRESSES = "tenant_addresses";
 
+  private static final CqlCache CQL_CACHE = new CqlCache(createCqlDefinition());
+
+  private final Vertx vertx;
   private final TenantPgPool pool;
   private final String addressesTable;
 
@@ -43,16 +48,32 @@ public class TenantAddressesStorage {
    * Database storage for tenant addresses for a tenant.
    */
   public TenantAddressesStorage(Vertx vertx, String tenant) {
+    this.vertx = vertx;
     this.pool = TenantPgPool.pool(vertx, tenant);
     this.addressesTable = "%s.%s".formatted(pool.getSchema(), TENANT_ADDRESSES);
   }
 
+  private static PgCqlDefinition createCqlDefinition() {
+    var definition = PgCqlDefinition.create();
+    definition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    definition.addField("id", new PgCqlFieldUuid());
+    definition.addField("name", new PgCqlFieldText().withExact());
+    definition.addField("address", new PgCqlFieldText().withLikeOps());
+    definition.addField("createdbyuserid", new PgCqlFieldUuid());
+    definition.addField("createddate", new PgCqlFieldTimestamp());
+    definition.addField("updatedbyuserid", new PgCqlFieldUuid());
+    definition.addField("updateddate", new PgCqlFieldTimestamp());
+    return definition;
+  }
+
   /**
    * Create the database table for the tenant.
    */
   public Future<Void> init(TenantInitConf tenantInitConf, String oldVersion) {
     return initTable()
-        .compose(x -> migrateData(tenantInitConf, oldVersion));
+        .compose(x -> migrateData(tenantInitConf, oldVersion))
+        // a purged and re-created tenant may still have cached values
+        .onComplete(x -> ReadCache.invalidate(addressesTable));
   }
 
   private Future<Void> initTable() {
@@ -66,7 +87,24 @@ public class TenantAddressesStorage {
                  createddate timestamp,
                  updatedbyuserid uuid,
                  updateddate timestamp)
-            """.formatted(addressesTable)));
+            """.formatted(addressesTable)))
+        .compose(x -> pool.execute(ReadCache.notifySql(pool.getSchema(), TENANT_ADDRESSES)));
+  }
+
+  /**
+   * Create or drop trigram index for CQL on address with truncation on the left,
+   * such as address=*street*.
+   *
+   * @param create true to create; false to drop
+   * @return async result
+   */
+  public Future<Void> initTrigramIndex(boolean create) {
+    return pool.execute(create
+        ? List.of(SettingsStorage.CREATE_TRGM_EXTENSION,
+            "CREATE INDEX IF NOT EXISTS tenant_addresses_address_trgm ON " + addressesTable
+                + " USING gin (address gin_trgm_ops)")
+        : List.of("DROP INDEX IF EXISTS " + pool.getSchema()
+            + ".tenant_addresses_address_trgm"));
   }
 
   private Future<Void> migrateData(TenantInitConf tenantInitConf, String oldVersion) {
@@ -174,30 +212,34 @@ public class TenantAddressesStorage {
 
   /**
    * Get tenant addresses.
+   *
+   * <p>Without a query the response is served from {@link ReadCache}; the table
+   * notifies on change.
    */
   public Future<Void> getTenantAddresses(HttpServerResponse response, String query,
-                                         int offset, int limit, ObjectMapper objectMapper) {
-    var definition = PgCqlDefinition.create();
-    definition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
-    definition.addField("id", new PgCqlFieldUuid());
-    definition.addField("name", new PgCqlFieldText().withExact());
-    definition.addField("address", new PgCqlFieldText().withLikeOps());
-    definition.addField("createdbyuserid", new PgCqlFieldUuid());
-    definition.addField("createddate", new PgCqlFieldTimestamp());
-    definition.addField("updatedbyuserid", new PgCqlFieldUuid());
-    definition.addField("updateddate", new PgCqlFieldTimestamp());
-    var request = new Paginator.PaginationRequest(query, offset, limit, definition);
-    BiConsumer<HttpServerResponse, Row> rowMapper =
-        (HttpServerResponse resp, Row row) -> mapToResponse(response, row, objectMapper);
+                                         int offset, int limit, TotalRecords totalRecords,
+                                         ObjectMapper objectMapper) {
+    var request = new Paginator.PaginationRequest(query, offset, limit, totalRecords,
+        CQL_CACHE);
+    BiConsumer<Buffer, Row> rowMapper =
+        (Buffer buffer, Row row) -> mapToResponse(buffer, row, objectMapper);
     var paginator = new Paginator(addressesTable, request, rowMapper);
+    if (query == null) {
+      String key = "list/" + offset + "/" + limit + "/" + totalRecords;
+      return ReadCache.get(vertx, addressesTable, key, () -> pool.withTransaction(
+              connection -> paginator.bufferResult(connection, "addresses")))
+          .compose(body -> response
+              .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+              .end(body.copy()));
+    }
     return pool.withTransaction(
         connection -> paginator.streamResult(response, connection, "addresses"));
   }
 
-  private void mapToResponse(HttpServerResponse response, Row row, ObjectMapper objectMapper) {
+  private void mapToResponse(Buffer buffer, Row row, ObjectMapper objectMapper) {
     var entry = mapToTenantAddress(row);
     try {
-      response.write(objectMapper.writeValueAsString(entry));
+      buffer.appendString(objectMapper.writeValueAsString(entry));
     } catch (JsonProcessingException e) {
       throw new IllegalStateException(e);
     }
@@ -205,13 +247,16 @@ public class TenantAddressesStorage {
 
   /**
    * Get tenant address by id.
+   *
+   * <p>Served from {@link ReadCache}; the table notifies on change.
    */
   public Future<TenantAddress> getTenantAddress(String id) {
-    return pool.preparedQuery(
+    UUID uuid = UUID.fromString(id);
+    return ReadCache.get(vertx, addressesTable, uuid.toString(), () -> pool.preparedQuery(
             ("SELECT id, name, address, createdbyuserid, createddate, updatedbyuserid, "
                 + "updateddate FROM %s WHERE id = $1").formatted(addressesTable))
-        .execute(Tuple.of(UUID.fromString(id)))
-        .compose(this::mapToTenantAddress);
+        .execute(Tuple.of(uuid))
+        .compose(this::mapToTenantAddress));
   }
 
   /**
@@ -228,6 +273,7 @@ public class TenantAddressesStorage {
             address.getMetadata().createdDate(),
             address.getMetadata().updatedByUserId(),
             address.getMetadata().updatedDate()))
+        .onComplete(x -> ReadCache.invalidate(addressesTable))
         .map(address);
   }
 
@@ -241,6 +287,7 @@ public class TenantAddressesStorage {
         .execute(Tuple.of(address.getName(), address.getAddress(),
             address.getMetadata().updatedByUserId(),
             address.getMetadata().updatedDate(), UUID.fromString(id)))
+        .onComplete(x -> ReadCache.invalidate(addressesTable))
         .compose(this::validateRowCount);
   }
 
@@ -250,6 +297,7 @@ public class TenantAddressesStorage {
   public Future<Void> deleteTenantAddress(String id) {
     return pool.preparedQuery("DELETE FROM %s WHERE id = $1".formatted(addressesTable))
         .execute(Tuple.of(UUID.fromString(id)))
+        .onComplete(x -> ReadCache.invalidate(addressesTable))
         .compose(this::validateRowCount);
   }
 
@@ -0,0 +1,61 @@
+package org.folio.settings.server.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * How resultInfo.totalRecords is computed for a streamed result.
+ */
+public enum TotalRecords {
+  /** Exact count with SELECT COUNT(*). */
+  EXACT,
+  /** Row estimate of the query planner; cheap but approximate. */
+  ESTIMATED,
+  /** No count; totalRecords is omitted. */
+  NONE;
+
+  /**
+   * Get strategy from totalRecords query parameter.
+   *
+   * @param value parameter value; null for default (exact)
+   * @return strategy
+   * @throws UserException for unknown value
+   */
+  public static TotalRecords fromParameter(String value) {
+    if (value == null) {
+      return EXACT;
+    }
+    return switch (value) {
+      case "exact" -> EXACT;
+      case "estimated" -> ESTIMATED;
+      case "none" -> NONE;
+      default -> throw new UserException("totalRecords must be exact, estimated or none");
+    };
+  }
+
+  /**
+   * Compute total records.
+   *
+   * @param connection SQL connection to use
+   * @param from       FROM clause of query (table and WHERE clause)
+   * @param args       arguments for parameters in from
+   * @return async result with total; null result for {@link #NONE}
+   */
+  public Future<Integer> count(SqlConnection connection, String from, Tuple args) {
+    return switch (this) {
+      case EXACT -> connection.preparedQuery("SELECT COUNT(*) FROM " + from).execute(args)
+          .map(rs -> rs.iterator().next().getInteger(0));
+      case ESTIMATED -> connection.preparedQuery("EXPLAIN (FORMAT JSON) SELECT 1 FROM " + from)
+          .execute(args)
+          .map(rs -> planRows(rs.iterator().next().getValue(0)));
+      case NONE -> Future.succeededFuture(null);
+    };
+  }
+
+  static Integer planRows(Object explain) {
+    var plan = explain instanceof JsonArray ar ? ar : new JsonArray(explain.toString());
+    return plan.getJsonObject(0).getJsonObject("Plan").getNumber("Plan Rows").intValue();
+  }
+}
@@ -1,17 +1,45 @@
 package org.folio.settings.server.main;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpClientAgent;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.settings.server.TestBase;
+import org.folio.settings.server.storage.SettingsStorage;
+import org.folio.tlib.postgres.TenantPgPool;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -565,6 +593,1205 @@ public class MainVerticleTest extends TestBase {
         .statusCode(403);
   }
 
+  @Test
+  public void testPatch() {
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", UUID.randomUUID().toString())
+        .put("key", "k1")
+        .put("value", new JsonObject()
+            .put("a", "1")
+            .put("b", new JsonObject().put("c", "2").put("d", "3")));
+    JsonArray permWrite = new JsonArray().add("mod-settings.global.write." + en.getString("scope"));
+    JsonArray permRead = new JsonArray().add("mod-settings.global.read." + en.getString("scope"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+
+    JsonObject patch = new JsonObject()
+        .put("value", new JsonObject()
+            .put("a", null)
+            .put("b", new JsonObject().put("c", "4"))
+            .put("e", new JsonArray().add(5)));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(patch.encode())
+        .patch("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("value.a", is(nullValue()))
+        .body("value.b.c", is("4"))
+        .body("value.b.d", is("3"))
+        .body("value.e[0]", is(5));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("scope", "other").encode())
+        .patch("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(400)
+        .body(is("scope cannot be patched"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .contentType(ContentType.JSON)
+        .body(patch.encode())
+        .patch("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(403);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(patch.encode())
+        .patch("/settings/entries/" + UUID.randomUUID())
+        .then()
+        .statusCode(404);
+  }
+
+  @Test
+  public void testETag() {
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", UUID.randomUUID().toString())
+        .put("key", "k1")
+        .put("value", "v1");
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + en.getString("scope"))
+        .add("mod-settings.global.read." + en.getString("scope"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+
+    String etag1 = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(200)
+        .extract().header("ETag");
+    assertThat(etag1, startsWith("\""));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header("If-None-Match", etag1)
+        .get("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(304)
+        .header("ETag", is(etag1));
+
+    String etag2 = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header("If-Match", etag1)
+        .contentType(ContentType.JSON)
+        .body(en.put("value", "v2").encode())
+        .put("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(204)
+        .extract().header("ETag");
+    assertThat(etag2, is(not(etag1)));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header("If-None-Match", etag1)
+        .get("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(200)
+        .header("ETag", is(etag2));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header("If-Match", etag1)
+        .contentType(ContentType.JSON)
+        .body(en.put("value", "v3").encode())
+        .put("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(412);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header("If-Match", etag1)
+        .delete("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(412);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header("If-Match", etag1 + ", " + etag2)
+        .delete("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(204);
+  }
+
+  @Test
+  public void testQueryValue() {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope);
+    List<JsonObject> values = List.of(
+        new JsonObject().put("enabled", true).put("level", 1),
+        new JsonObject().put("enabled", false).put("level", 2),
+        new JsonObject().put("enabled", "true").put("name", "it's"));
+    for (int i = 0; i < values.size(); i++) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .contentType(ContentType.JSON)
+          .body(new JsonObject()
+              .put("id", UUID.randomUUID().toString())
+              .put("scope", scope)
+              .put("key", "k" + i)
+              .put("value", values.get(i))
+              .encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "scope==" + scope + " and value.enabled==true sortBy key")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(2))
+        .body("items[0].key", is("k0"))
+        .body("items[1].key", is("k2"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "scope==" + scope + " and value.level=2")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].key", is("k1"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "value.name==\"it's\"")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].key", is("k2"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "value.level>1")
+        .get("/settings/entries")
+        .then()
+        .statusCode(400)
+        .body(containsString("Unsupported relation > for value.level"));
+  }
+
+  @Test
+  public void testEffective() {
+    String userId = UUID.randomUUID().toString();
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.owner.write." + scope)
+        .add("mod-settings.owner.read." + scope)
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope);
+    List<JsonObject> entries = List.of(
+        new JsonObject().put("key", "k1").put("value", "g1"),
+        new JsonObject().put("key", "k1").put("value", "u1").put("userId", userId),
+        new JsonObject().put("key", "k2").put("value", "g2"),
+        new JsonObject().put("key", "k3").put("value", "u3").put("userId", userId));
+    for (JsonObject en : entries) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .header(XOkapiHeaders.USER_ID, userId)
+          .contentType(ContentType.JSON)
+          .body(en.put("id", UUID.randomUUID().toString()).put("scope", scope).encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/effective?scope=" + scope + "&key=k1&key=k2&key=k3&key=k4")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(3))
+        .body("items[0].value", is("u1"))
+        .body("items[1].value", is("g2"))
+        .body("items[2].value", is("u3"));
+
+    // without a user only settings without userId apply
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/effective?scope=" + scope + "&key=k1")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].value", is("g1"));
+
+    // the user's own setting may not be read, so the setting without userId applies
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read." + scope).encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/effective?scope=" + scope + "&key=k1&key=k2&key=k3")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(2))
+        .body("items[0].value", is("g1"))
+        .body("items[1].value", is("g2"));
+
+    // no settings may be read
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.write." + scope).encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/effective?scope=" + scope + "&key=k1")
+        .then()
+        .statusCode(403);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/effective?scope=" + scope)
+        .then()
+        .statusCode(400)
+        .body(containsString("Missing key"));
+  }
+
+  @Test
+  public void testOwnSettings() {
+    String userId = UUID.randomUUID().toString();
+    String scope1 = "me1-" + UUID.randomUUID();
+    String scope2 = "me2-" + UUID.randomUUID();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.owner.write." + scope1)
+        .add("mod-settings.owner.read." + scope1)
+        .add("mod-settings.owner.write." + scope2)
+        .add("mod-settings.owner.read." + scope2)
+        .add("mod-settings.global.write." + scope1)
+        .add("mod-settings.global.read." + scope1);
+    List<JsonObject> entries = List.of(
+        new JsonObject().put("scope", scope2).put("key", "k1").put("userId", userId),
+        new JsonObject().put("scope", scope1).put("key", "k2").put("userId", userId),
+        new JsonObject().put("scope", scope1).put("key", "k1").put("userId", userId),
+        new JsonObject().put("scope", scope1).put("key", "k1"));
+    for (JsonObject en : entries) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .header(XOkapiHeaders.USER_ID, userId)
+          .contentType(ContentType.JSON)
+          .body(en.put("id", UUID.randomUUID().toString()).put("value", "v").encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/me")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(3))
+        .body("items[0].id", is(entries.get(2).getString("id")))
+        .body("items[1].id", is(entries.get(1).getString("id")))
+        .body("items[2].id", is(entries.get(0).getString("id")))
+        .body("resultInfo.totalRecords", is(3));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.owner.read." + scope2).encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/me")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].scope", is(scope2));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/me")
+        .then()
+        .statusCode(400)
+        .body(containsString("Missing header X-Okapi-User-Id"));
+  }
+
+  @Test
+  public void testOwnSettingsLargeValue() {
+    String userId = UUID.randomUUID().toString();
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.owner.write." + scope)
+        .add("mod-settings.owner.read." + scope);
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "layout")
+        .put("userId", userId)
+        .put("value", incompressible(10000));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+
+    en.put("value", incompressible(10000));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .put("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(204);
+
+    en.put("value", incompressible(10000));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .contentType(ContentType.JSON)
+        .body(new JsonArray().add(en).encode())
+        .put("/settings/upload")
+        .then()
+        .statusCode(200)
+        .body("updated", is(1));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/me")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].value", is(en.getString("value")));
+  }
+
+  @Test
+  public void testScope() {
+    String scope = UUID.randomUUID().toString();
+    String userId = UUID.randomUUID().toString();
+    JsonObject en1 = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "k1")
+        .put("value", new JsonObject().put("a", 1));
+    JsonObject en2 = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "k1")
+        .put("userId", userId)
+        .put("value", "v2");
+    JsonObject en3 = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "k2")
+        .put("userId", UUID.randomUUID().toString())
+        .put("value", "v3");
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.users.write." + scope)
+        .add("mod-settings.users.read." + scope);
+    for (JsonObject en : List.of(en1, en2, en3)) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .contentType(ContentType.JSON)
+          .body(en.encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    String etag1 = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .get("/settings/scopes/" + scope)
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("scope", is(scope))
+        .body("global.k1.a", is(1))
+        .body("global.k2", is(nullValue()))
+        .body("user.k1", is("v2"))
+        .body("user.k2", is(nullValue()))
+        .extract().header("ETag");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .header("If-None-Match", etag1)
+        .get("/settings/scopes/" + scope)
+        .then()
+        .statusCode(304)
+        .header("ETag", is(etag1));
+
+    // other rights, other ETag
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read." + scope).encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .header("If-None-Match", etag1)
+        .get("/settings/scopes/" + scope)
+        .then()
+        .statusCode(200)
+        .body("global.k1.a", is(1))
+        .body("user.k1", is(nullValue()));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .contentType(ContentType.JSON)
+        .body(en3.put("value", "v4").encode())
+        .put("/settings/entries/" + en3.getString("id"))
+        .then()
+        .statusCode(204);
+
+    String etag2 = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .header("If-None-Match", etag1)
+        .get("/settings/scopes/" + scope)
+        .then()
+        .statusCode(200)
+        .body("user.k1", is("v2"))
+        .extract().header("ETag");
+    assertThat(etag2, is(not(etag1)));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .delete("/settings/entries/" + en1.getString("id"))
+        .then()
+        .statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .header("If-None-Match", etag2)
+        .get("/settings/scopes/" + scope)
+        .then()
+        .statusCode(200)
+        .body("global.k1", is(nullValue()))
+        .header("ETag", is(not(etag2)));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read.other").encode())
+        .get("/settings/scopes/" + scope)
+        .then()
+        .statusCode(403);
+  }
+
+  @Test
+  public void testScopeKeys() {
+    String scope = UUID.randomUUID().toString();
+    String userId = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.users.write." + scope)
+        .add("mod-settings.users.read." + scope);
+    List<List<String>> keys = List.of(
+        List.of("ui.layout.a.x", ""),
+        List.of("ui.layout.a.x", userId),
+        List.of("ui.layout.a.y", ""),
+        List.of("ui.layout.b", UUID.randomUUID().toString()),
+        List.of("ui.layoutX", ""),
+        List.of("uiXlayout.c", ""),
+        List.of("ui.theme", ""));
+    for (List<String> key : keys) {
+      JsonObject en = new JsonObject()
+          .put("id", UUID.randomUUID().toString())
+          .put("scope", scope)
+          .put("key", key.get(0))
+          .put("value", "v");
+      if (!key.get(1).isEmpty()) {
+        en.put("userId", key.get(1));
+      }
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .contentType(ContentType.JSON)
+          .body(en.encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("scope", is(scope))
+        .body("prefix", is(""))
+        .body("keys", contains("ui.layout.a.x", "ui.layout.a.y", "ui.layout.b",
+            "ui.layoutX", "ui.theme", "uiXlayout.c"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("prefix", "ui.layout.")
+        .queryParam("after", "ui.layout.a.x")
+        .queryParam("limit", 1)
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(200)
+        .body("keys", contains("ui.layout.a.y"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("prefix", "ui.layout.")
+        .queryParam("segments", true)
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(200)
+        .body("keys", is(nullValue()))
+        .body("segments.segment", contains("a", "b"))
+        .body("segments.count", contains(2, 1));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("segments", true)
+        .queryParam("after", "ui")
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(200)
+        .body("segments.segment", contains("uiXlayout"))
+        .body("segments.count", contains(1));
+
+    // owner sees own keys only
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.owner.read." + scope).encode())
+        .header(XOkapiHeaders.USER_ID, userId)
+        .queryParam("prefix", "ui.layout.")
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(200)
+        .body("keys", contains("ui.layout.a.x"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("limit", 0)
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(400)
+        .body(containsString("limit must be between 1 and 10000"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read.other").encode())
+        .get("/settings/scopes/" + scope + "/keys")
+        .then()
+        .statusCode(403);
+  }
+
+  @Test
+  public void testChanges() {
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", UUID.randomUUID().toString())
+        .put("key", "k1")
+        .put("value", "v1");
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + en.getString("scope"))
+        .add("mod-settings.global.read." + en.getString("scope"));
+
+    long since = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(0))
+        .extract().jsonPath().getLong("last");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .contentType(ContentType.JSON)
+        .body(en.put("value", "v2").encode())
+        .put("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .delete("/settings/entries/" + en.getString("id"))
+        .then()
+        .statusCode(204);
+
+    ExtractableResponse<Response> response = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes?since=" + since)
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(3))
+        .body("items[0].op", is("INSERT"))
+        .body("items[1].op", is("UPDATE"))
+        .body("items[2].op", is("DELETE"))
+        .body("items[2].id", is(en.getString("id")))
+        .body("items[2].scope", is(en.getString("scope")))
+        .body("items[2].key", is("k1"))
+        .body("items[2].userId", is(nullValue()))
+        .extract();
+    long seq2 = response.jsonPath().getLong("items[2].seq");
+    assertThat(response.jsonPath().getLong("last"), greaterThanOrEqualTo(seq2));
+
+    long seq0 = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes?limit=1&since=" + since)
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("items[0].op", is("INSERT"))
+        .extract().jsonPath().getLong("last");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes?limit=2&since=" + seq0)
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(2))
+        .body("items[0].op", is("UPDATE"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read." + UUID.randomUUID()).encode())
+        .get("/settings/changes?since=" + since)
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(0));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes?limit=0&since=" + since)
+        .then()
+        .statusCode(400)
+        .body(containsString("limit must be between 1 and 10000"));
+  }
+
+  @Test
+  public void testChangesConcurrentUploads(TestContext context) {
+    String scope = UUID.randomUUID().toString();
+    String userId = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.users.write." + scope)
+        .add("mod-settings.users.read." + scope);
+    List<JsonObject> entries = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      entries.add(new JsonObject()
+          .put("id", UUID.randomUUID().toString())
+          .put("scope", scope)
+          .put("key", "k" + i));
+      entries.add(new JsonObject()
+          .put("id", UUID.randomUUID().toString())
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("userId", userId));
+    }
+    long since = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes")
+        .then()
+        .statusCode(200)
+        .extract().jsonPath().getLong("last");
+
+    // each upload writes global and user entries in several statements of one
+    // transaction, in an order of its own, over the same keys as the others
+    List<Future<Void>> uploads = new ArrayList<>();
+    for (int n = 0; n < 4; n++) {
+      JsonArray body = new JsonArray();
+      for (int i = 0; i < entries.size(); i++) {
+        JsonObject en = entries.get(n % 2 == 0 ? i : entries.size() - 1 - i);
+        body.add(en.copy().put("value", "u" + n));
+      }
+      uploads.add(webClient.putAbs(MODULE_URL + "/settings/upload")
+          .addQueryParam("batchSize", "5")
+          .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+          .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .sendJson(body)
+          .map(res -> {
+            context.assertEquals(200, res.statusCode(), res.bodyAsString());
+            return null;
+          }));
+    }
+    Future.all(uploads)
+        .compose(x -> webClient.getAbs(MODULE_URL + "/settings/changes")
+            .addQueryParam("since", Long.toString(since))
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+            .send())
+        .onComplete(context.asyncAssertSuccess(res -> {
+          context.assertEquals(200, res.statusCode());
+          JsonArray items = res.bodyAsJsonObject().getJsonArray("items");
+          // the first upload inserts all entries; later ones update those they change
+          context.assertTrue(items.size() >= entries.size(), items.encode());
+          for (int i = 1; i < items.size(); i++) {
+            context.assertTrue(items.getJsonObject(i - 1).getLong("seq")
+                < items.getJsonObject(i).getLong("seq"));
+          }
+        }));
+  }
+
+  @Test
+  public void testChangesWritersDoNotBlock(TestContext context) {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope);
+    JsonObject a = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "a")
+        .put("value", "v1");
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .contentType(ContentType.JSON)
+        .body(a.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+    long since = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .get("/settings/changes")
+        .then()
+        .statusCode(200)
+        .extract().jsonPath().getLong("last");
+
+    TenantPgPool pool = TenantPgPool.pool(vertx, TENANT_1);
+    String settings = pool.getSchema() + ".settings";
+    JsonObject b = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "b")
+        .put("value", "v1");
+    // a writer of key a, with a statement that changes nothing, is still open
+    // while key b is written
+    pool.withTransaction(conn -> conn
+            .preparedQuery("INSERT INTO " + settings + " AS s (id, scope, key, value)"
+                + " VALUES ($1, $2, 'a', $3) ON CONFLICT (scope, key) WHERE userId IS NULL"
+                + " DO UPDATE SET value = EXCLUDED.value"
+                + " WHERE s.value IS DISTINCT FROM EXCLUDED.value")
+            .execute(Tuple.of(UUID.randomUUID(), scope, new JsonObject().put("value", "v1")))
+            .compose(x -> webClient.postAbs(MODULE_URL + "/settings/entries")
+                .timeout(5000)
+                .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+                .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+                .sendJsonObject(b))
+            .compose(res -> {
+              context.assertEquals(204, res.statusCode(), res.bodyAsString());
+              return conn
+                  .preparedQuery("UPDATE " + settings + " SET value = $1"
+                      + " WHERE scope = $2 AND key = 'a' AND userId IS NULL")
+                  .execute(Tuple.of(new JsonObject().put("value", "v2"), scope));
+            }))
+        .compose(x -> webClient.getAbs(MODULE_URL + "/settings/changes")
+            .addQueryParam("since", Long.toString(since))
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+            .send())
+        .onComplete(context.asyncAssertSuccess(res -> {
+          context.assertEquals(200, res.statusCode());
+          // in commit order
+          JsonArray items = res.bodyAsJsonObject().getJsonArray("items");
+          context.assertEquals(2, items.size(), items.encode());
+          context.assertEquals("INSERT", items.getJsonObject(0).getString("op"));
+          context.assertEquals("b", items.getJsonObject(0).getString("key"));
+          context.assertEquals("UPDATE", items.getJsonObject(1).getString("op"));
+          context.assertEquals("a", items.getJsonObject(1).getString("key"));
+        }));
+  }
+
+  @Test
+  public void testStream(TestContext context) {
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", UUID.randomUUID().toString())
+        .put("key", "k1")
+        .put("value", "v1");
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + en.getString("scope"))
+        .add("mod-settings.global.read." + en.getString("scope"));
+    HttpClientAgent client = vertx.createHttpClient();
+    Async async = context.async();
+    StringBuilder events = new StringBuilder();
+    client.request(HttpMethod.GET, MODULE_PORT, "localhost",
+            "/settings/stream?scope=" + en.getString("scope"))
+        .compose(req -> req
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+            .send())
+        .compose(res -> {
+          context.assertEquals(200, res.statusCode());
+          context.assertTrue(res.getHeader("Content-Type").startsWith("text/event-stream"));
+          res.handler(buf -> {
+            events.append(buf.toString());
+            int data = events.indexOf("data:");
+            if (!async.isCompleted() && data >= 0 && events.indexOf("\n\n", data) > 0) {
+              context.assertTrue(events.indexOf("event: change\n") >= 0, events.toString());
+              context.assertTrue(events.indexOf("\"op\":\"INSERT\"") >= 0, events.toString());
+              context.assertTrue(events.indexOf(en.getString("id")) >= 0, events.toString());
+              client.close();
+              async.complete();
+            }
+          });
+          return webClient.postAbs(MODULE_URL + "/settings/entries")
+              .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+              .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+              .sendJsonObject(en);
+        })
+        .onSuccess(res -> context.assertEquals(204, res.statusCode()))
+        .onFailure(context::fail);
+  }
+
+  @Test
+  public void testSharedQueryUsers(TestContext context) {
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", UUID.randomUUID().toString())
+        .put("key", "k1")
+        .put("value", "v1");
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + en.getString("scope"))
+        .add("mod-settings.global.read." + en.getString("scope"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+
+    sharedGets(perms, "/settings/entries")
+        .onComplete(context.asyncAssertSuccess(bodies -> {
+          context.assertEquals(bodies.get(0), bodies.get(1));
+          JsonObject body = new JsonObject(bodies.get(0));
+          context.assertEquals(en.getString("id"),
+              body.getJsonArray("items").getJsonObject(0).getString("id"));
+        }));
+  }
+
+  /**
+   * Send the same GET twice while the settings table is locked, so the second request
+   * joins the query of the first. Fails unless exactly one query was shared.
+   *
+   * @return async result with the two response bodies
+   */
+  private static Future<List<String>> sharedGets(JsonArray perms, String uri) {
+    // the lock holds the first query until the second has joined it
+    TenantPgPool pool = TenantPgPool.pool(vertx, TENANT_1);
+    long shared = SettingsStorage.getSharedQueries();
+    Promise<Void> locked = Promise.promise();
+    Promise<Void> release = Promise.promise();
+    Future<Void> lock = pool.withTransaction(conn -> conn
+        .query("LOCK TABLE " + pool.getSchema() + ".settings IN ACCESS EXCLUSIVE MODE")
+        .execute()
+        .compose(x -> {
+          locked.complete();
+          return release.future();
+        }));
+    return locked.future()
+        .compose(x -> {
+          List<Future<String>> gets = new ArrayList<>();
+          for (int i = 0; i < 2; i++) {
+            gets.add(webClient.getAbs(MODULE_URL + uri)
+                .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+                .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+                .putHeader(XOkapiHeaders.USER_ID, UUID.randomUUID().toString())
+                .send()
+                .compose(res -> {
+                  if (res.statusCode() != 200) {
+                    return Future.failedFuture(res.statusCode() + ": " + res.bodyAsString());
+                  }
+                  return Future.succeededFuture(res.bodyAsString());
+                }));
+          }
+          vertx.setPeriodic(10, id -> {
+            if (SettingsStorage.getSharedQueries() > shared) {
+              vertx.cancelTimer(id);
+              release.tryComplete();
+            }
+          });
+          return Future.all(gets).compose(all -> lock.map(all.<String>list()));
+        })
+        .compose(bodies -> {
+          long n = SettingsStorage.getSharedQueries() - shared;
+          if (n != 1) {
+            return Future.failedFuture("shared queries: " + n);
+          }
+          return Future.succeededFuture(bodies);
+        });
+  }
+
+  /**
+   * Random string of about the given length that does not compress.
+   */
+  private static String incompressible(int length) {
+    byte[] bytes = new byte[length * 3 / 4];
+    new Random().nextBytes(bytes);
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+  @Test
+  public void testLargePages() {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope);
+    // 12 values of 10 KB are more than is shared in memory
+    for (int i = 0; i < 12; i++) {
+      JsonObject en = new JsonObject()
+          .put("id", UUID.randomUUID().toString())
+          .put("scope", scope)
+          .put("key", "k" + (char) ('a' + i))
+          .put("value", incompressible(10000));
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .contentType(ContentType.JSON)
+          .body(en.encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    for (int limit : List.of(11, 2000)) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .queryParam("query", "scope==" + scope + " sortBy key")
+          .queryParam("limit", limit)
+          .get("/settings/entries")
+          .then()
+          .statusCode(200)
+          .body("items", hasSize(Math.min(limit, 12)))
+          .body("items[0].key", is("ka"))
+          .body("items[10].key", is("kk"))
+          .body("items[10].value.length()", is(10000))
+          .body("resultInfo.totalRecords", is(12));
+    }
+  }
+
+  @Test
+  public void testLargePageShared(TestContext context) {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray().add("mod-settings.global.read." + scope);
+    TenantPgPool pool = TenantPgPool.pool(vertx, TENANT_1);
+    // about 1 MB, far more than is kept for requests that join later
+    pool.query("INSERT INTO " + pool.getSchema() + ".settings (id, scope, key, value)"
+            + " SELECT gen_random_uuid(), '" + scope + "', 'k' || g,"
+            + " jsonb_build_object('value', repeat(md5(g::text), 30))"
+            + " FROM generate_series(1, 1000) AS g")
+        .execute()
+        .compose(x -> sharedGets(perms, "/settings/entries?limit=2000&query=scope==" + scope))
+        .onComplete(context.asyncAssertSuccess(bodies -> {
+          context.assertEquals(bodies.get(0), bodies.get(1));
+          JsonObject body = new JsonObject(bodies.get(0));
+          context.assertEquals(1000, body.getJsonArray("items").size());
+          context.assertEquals(1000, body.getJsonObject("resultInfo").getInteger("totalRecords"));
+        }));
+  }
+
+  @Test
+  public void testLargePageClientClosed(TestContext context) {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray().add("mod-settings.global.read." + scope);
+    TenantPgPool pool = TenantPgPool.pool(vertx, TENANT_1);
+    // connections of the module that wait in a transaction, such as a paused stream
+    String waiting = "SELECT count(*) AS n FROM pg_stat_activity"
+        + " WHERE state = 'idle in transaction' AND query LIKE '%jsonb_build_object%'";
+    HttpClientAgent client = vertx.createHttpClient();
+    // about 10 MB, far more than socket buffers hold while the client does not read
+    pool.query("INSERT INTO " + pool.getSchema() + ".settings (id, scope, key, value)"
+            + " SELECT gen_random_uuid(), '" + scope + "', 'k' || g,"
+            + " jsonb_build_object('value', repeat(md5(g::text), 300))"
+            + " FROM generate_series(1, 1000) AS g")
+        .execute()
+        .compose(x -> client.request(HttpMethod.GET, MODULE_PORT, "localhost",
+            "/settings/entries?limit=2000&query=scope==" + scope))
+        .compose(req -> req
+            .putHeader(XOkapiHeaders.TENANT, TENANT_1)
+            .putHeader(XOkapiHeaders.PERMISSIONS, perms.encode())
+            .send())
+        .compose(res -> {
+          context.assertEquals(200, res.statusCode());
+          res.pause();
+          return awaitCount(pool, waiting, n -> n > 0, System.currentTimeMillis() + 10000);
+        })
+        .compose(x -> client.close())
+        // the transaction is rolled back and the connection returned to the pool
+        .compose(x -> awaitCount(pool, waiting, n -> n == 0, System.currentTimeMillis() + 10000))
+        .onComplete(context.asyncAssertSuccess());
+  }
+
+  private static Future<Void> awaitCount(TenantPgPool pool, String sql, LongPredicate done,
+      long deadline) {
+    return pool.query(sql).execute().compose(rowSet -> {
+      long n = rowSet.iterator().next().getLong("n");
+      if (done.test(n)) {
+        return Future.succeededFuture();
+      }
+      if (System.currentTimeMillis() > deadline) {
+        return Future.failedFuture("Got " + n + " for " + sql);
+      }
+      Promise<Void> promise = Promise.promise();
+      vertx.setTimer(100, id -> awaitCount(pool, sql, done, deadline).onComplete(promise));
+      return promise.future();
+    });
+  }
+
+  @Test
+  public void testStreamForbidden() {
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, "[]")
+        .get("/settings/stream")
+        .then()
+        .statusCode(403);
+  }
+
+  @Test
+  public void testUpdateStoredOwner() {
+    JsonObject en1 = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", UUID.randomUUID().toString())
+        .put("key", "k1")
+        .put("userId", UUID.randomUUID().toString())
+        .put("value", new JsonObject().put("v", "thevalue"));
+
+    JsonArray permUsersWrite = new JsonArray().add("mod-settings.users.write." + en1.getString("scope"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permUsersWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(en1.encode())
+        .post("/settings/entries")
+        .then()
+        .statusCode(204);
+
+    // another user may not take over the entry
+    UUID otherUser = UUID.randomUUID();
+    JsonObject en2 = en1.copy().put("userId", otherUser.toString());
+    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + en1.getString("scope"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, otherUser.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(en2.encode())
+        .put("/settings/entries/" + en2.getString("id"))
+        .then()
+        .statusCode(403);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, otherUser.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .delete("/settings/entries/" + en1.getString("id"))
+        .then()
+        .statusCode(404);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permUsersWrite.encode())
+        .delete("/settings/entries/" + en1.getString("id"))
+        .then()
+        .statusCode(204);
+  }
+
   @Test
   public void testGetSettings() {
     JsonObject en = new JsonObject()
@@ -615,14 +1842,220 @@ public class MainVerticleTest extends TestBase {
     for (int i = 0; i < 2; i++) {
       en3
           .put("id", UUID.randomUUID().toString())
-          .put("userId", userId)
-          .put("key", "l" + i);
+          .put("userId", userId)
+          .put("key", "l" + i);
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.USER_ID, userId.toString())
+          .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+          .contentType(ContentType.JSON)
+          .body(en3.encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(10))
+        .body("resultInfo.totalRecords", is(15));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
+        .queryParam("limit", 3)
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(3))
+        .body("resultInfo.totalRecords", is(15));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
+        .queryParam("offset", 12)
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(3))
+        .body("resultInfo.totalRecords", is(15));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permUsersRead.encode())
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(5))
+        .body("resultInfo.totalRecords", is(5));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(2))
+        .body("resultInfo.totalRecords", is(2));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(2))
+        .body("resultInfo.totalRecords", is(2));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
+        .queryParam("query", "scope=\""
+            + en3.getString("scope") + "\" and key=l1")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(1))
+        .body("resultInfo.totalRecords", is(1));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
+        .queryParam("query", "scope=\""
+            + en3.getString("scope") + "\" and key=l*")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(2))
+        .body("resultInfo.totalRecords", is(2));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray().encode())
+        .get("/settings/entries")
+        .then()
+        .statusCode(403)
+        .contentType(ContentType.TEXT);
+  }
+
+  @Test
+  public void testGetSettingsAfter() {
+    String scope = UUID.randomUUID().toString();
+    JsonArray permWrite = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.users.write." + scope);
+    JsonArray permRead = new JsonArray()
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.users.read." + scope);
+    Set<String> ids = new HashSet<>();
+    for (int i = 0; i < 8; i++) {
+      JsonObject en = new JsonObject()
+          .put("id", UUID.randomUUID().toString())
+          .put("scope", scope)
+          .put("key", "k" + (i % 3))
+          .put("value", i);
+      if (i >= 3) {
+        en.put("userId", UUID.randomUUID().toString());
+      }
+      ids.add(en.getString("id"));
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+          .contentType(ContentType.JSON)
+          .body(en.encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    Set<String> got = new HashSet<>();
+    String after = "";
+    for (int page = 0; page < 3; page++) {
+      ExtractableResponse<Response> res = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+          .queryParam("limit", 3)
+          .queryParam("after", after)
+          .get("/settings/entries")
+          .then()
+          .statusCode(200)
+          .contentType(ContentType.JSON)
+          .body("items", hasSize(page < 2 ? 3 : 2))
+          .body("resultInfo.totalRecords", is(8))
+          .extract();
+      List<String> pageIds = res.path("items.id");
+      got.addAll(pageIds);
+      after = res.path("resultInfo.next");
+      assertThat(after == null, is(page == 2));
+    }
+    assertThat(got, is(ids));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("after", "")
+        .queryParam("offset", 1)
+        .get("/settings/entries")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("after cannot be combined with offset"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("after", "")
+        .queryParam("query", "scope==\"" + scope + "\" sortBy key")
+        .get("/settings/entries")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("after cannot be combined with sortBy"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("after", "x")
+        .get("/settings/entries")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Invalid after token: x"));
+  }
+
+  @Test
+  public void testGetSettingsStream() {
+    JsonObject en = new JsonObject()
+        .put("scope", UUID.randomUUID().toString())
+        .put("value", new JsonObject().put("v", "stream"));
+    JsonArray permGlobalWrite = new JsonArray().add("mod-settings.global.write." + en.getString("scope"));
+    JsonArray permGlobalRead = new JsonArray().add("mod-settings.global.read." + en.getString("scope"));
+    // sqlStreamFetchSize = 100, use 2 * sqlStreamFetchSize + 1
+    for (int i = 0; i < 201; i++) {
+      en
+          .put("id", UUID.randomUUID().toString())
+          .put("key", "s" + i);
       RestAssured.given()
           .header(XOkapiHeaders.TENANT, TENANT_1)
-          .header(XOkapiHeaders.USER_ID, userId.toString())
-          .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+          .header(XOkapiHeaders.PERMISSIONS, permGlobalWrite.encode())
           .contentType(ContentType.JSON)
-          .body(en3.encode())
+          .body(en.encode())
           .post("/settings/entries")
           .then()
           .statusCode(204);
@@ -631,327 +2064,765 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
-        .get("/settings/entries")
+        .get("/settings/entries?limit=1000")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(10))
-        .body("resultInfo.totalRecords", is(15));
+        .body("items", hasSize(201))
+        .body("resultInfo.totalRecords", is(201));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
-        .queryParam("limit", 3)
-        .get("/settings/entries")
+        .get("/settings/entries?limit=1000&totalRecords=none")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(3))
-        .body("resultInfo.totalRecords", is(15));
+        .body("items", hasSize(201))
+        .body("resultInfo.totalRecords", nullValue());
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
-        .queryParam("offset", 12)
-        .get("/settings/entries")
+        .get("/settings/entries?limit=1&totalRecords=estimated")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(3))
-        .body("resultInfo.totalRecords", is(15));
+        .body("items", hasSize(1))
+        .body("resultInfo.totalRecords", greaterThanOrEqualTo(0));
+  }
 
+  @Test
+  public void testUploadFailures() {
+    String scope = UUID.randomUUID().toString();
+    UUID userId = UUID.randomUUID();
+    JsonArray permissionsLacking = new JsonArray().add("mod-settings.owner.write.other");
+    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + scope);
+    int no = 3;
+    JsonArray ar = new JsonArray();
+    for (int i = 0; i < no; i++) {
+      JsonObject en = new JsonObject()
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("userId", userId.toString())
+          .put("value", new JsonObject().put("v", "thevalue"));
+      ar.add(en);
+    }
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.PERMISSIONS, permUsersRead.encode())
-        .get("/settings/entries")
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permissionsLacking.encode())
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
+        .put("/settings/upload")
         .then()
-        .statusCode(200)
+        .statusCode(403)
+        .contentType(ContentType.TEXT)
+        .body(is("Forbidden"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
         .contentType(ContentType.JSON)
-        .body("items", hasSize(5))
-        .body("resultInfo.totalRecords", is(5));
+        .body(ar.encode())
+        .put("/settings/upload")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Missing header X-Okapi-Permissions"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permissionsLacking.encode())
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
+        .put("/settings/upload")
+        .then()
+        .statusCode(403)
+        .contentType(ContentType.TEXT)
+        .body(is("Forbidden"));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
-        .get("/settings/entries")
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.TEXT)
+        .body("Hello")
+        .put("/settings/upload")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Content-Type must be application/json"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body("[{\"a\":\"b\"}]")
+        .put("/settings/upload")
+        .then()
+        .statusCode(403)
+        .contentType(ContentType.TEXT)
+        .body(is("Forbidden"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body("[{\"a\":]")
+        .put("/settings/upload")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(containsString("Unexpected character"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .put("/settings/upload")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Content-Type must be application/json"));
+  }
+
+  @Test
+  public void uploadIdMustNotBeSupplied() {
+    String scope = UUID.randomUUID().toString();
+    UUID userId = UUID.randomUUID();
+    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + scope);
+    int no = 2;
+    JsonArray ar = new JsonArray();
+    for (int i = 0; i < no; i++) {
+      JsonObject en = new JsonObject()
+          .put("id", UUID.randomUUID().toString())
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("userId", userId.toString())
+          .put("value", "thevalue");
+      ar.add(en);
+    }
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
+        .put("/settings/upload")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("No id must supplied for upload"));
+  }
+
+  @Test
+  public void testUploadOK() {
+    String scope = UUID.randomUUID().toString();
+    UUID userId = UUID.randomUUID();
+    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + scope);
+    JsonArray permOwnerRead = new JsonArray().add("mod-settings.owner.read." + scope);
+    int no = 100;
+    JsonArray ar = new JsonArray();
+    for (int i = 0; i < no; i++) {
+      JsonObject en = new JsonObject()
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("userId", userId.toString())
+          .put("value", "s".repeat(1000));
+      ar.add(en);
+    }
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
+        .put("/settings/upload")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(2))
-        .body("resultInfo.totalRecords", is(2));
+        .body("inserted", is(no))
+        .body("updated", is(0));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
-        .get("/settings/entries")
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
+        .put("/settings/upload")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(2))
-        .body("resultInfo.totalRecords", is(2));
+        .body("inserted", is(0))
+        .body("updated", is(0))
+        .body("unchanged", is(no));
 
+    // larger than one flush of the stream buffer
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
         .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
-        .queryParam("query", "scope=\""
-            + en3.getString("scope") + "\" and key=l1")
+        .queryParam("limit", no)
         .get("/settings/entries")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(1))
-        .body("resultInfo.totalRecords", is(1));
+        .body("items", hasSize(no))
+        .body("items[99].value", is("s".repeat(1000)))
+        .body("resultInfo.totalRecords", is(no));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
         .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
-        .queryParam("query", "scope=\""
-            + en3.getString("scope") + "\" and key=l*")
+        .queryParam("limit", 0)
+        .contentType(ContentType.JSON)
         .get("/settings/entries")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(2))
-        .body("resultInfo.totalRecords", is(2));
+        .body("items", hasSize(0))
+        .body("resultInfo.totalRecords", is(no));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.PERMISSIONS, new JsonArray().encode())
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
+        .queryParam("limit", 0)
+        .contentType(ContentType.JSON)
         .get("/settings/entries")
         .then()
-        .statusCode(403)
-        .contentType(ContentType.TEXT);
-  }
-
-  @Test
-  public void testGetSettingsStream() {
-    JsonObject en = new JsonObject()
-        .put("scope", UUID.randomUUID().toString())
-        .put("value", new JsonObject().put("v", "stream"));
-    JsonArray permGlobalWrite = new JsonArray().add("mod-settings.global.write." + en.getString("scope"));
-    JsonArray permGlobalRead = new JsonArray().add("mod-settings.global.read." + en.getString("scope"));
-    // sqlStreamFetchSize = 100, use 2 * sqlStreamFetchSize + 1
-    for (int i = 0; i < 201; i++) {
-      en
-          .put("id", UUID.randomUUID().toString())
-          .put("key", "s" + i);
-      RestAssured.given()
-          .header(XOkapiHeaders.TENANT, TENANT_1)
-          .header(XOkapiHeaders.PERMISSIONS, permGlobalWrite.encode())
-          .contentType(ContentType.JSON)
-          .body(en.encode())
-          .post("/settings/entries")
-          .then()
-          .statusCode(204);
-    }
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(0))
+        .body("resultInfo.totalRecords", is(no));
 
+    ar.getJsonObject(0).put("value", "changed");
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.PERMISSIONS, permGlobalRead.encode())
-        .get("/settings/entries?limit=1000")
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
+        .put("/settings/upload")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(201))
-        .body("resultInfo.totalRecords", is(201));
+        .body("inserted", is(0))
+        .body("updated", is(1))
+        .body("unchanged", is(no - 1));
   }
 
   @Test
-  public void testUploadFailures() {
-    String scope = UUID.randomUUID().toString();
-    UUID userId = UUID.randomUUID();
-    JsonArray permissionsLacking = new JsonArray().add("mod-settings.owner.write.other");
-    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + scope);
-    int no = 3;
+  public void testUploadBatches() {
+    String scope = UUID.randomUUID().toString();
+    UUID userId = UUID.randomUUID();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.owner.write." + scope)
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.owner.read." + scope);
     JsonArray ar = new JsonArray();
-    for (int i = 0; i < no; i++) {
-      JsonObject en = new JsonObject()
+    for (int i = 0; i < 5; i++) {
+      ar.add(new JsonObject()
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("value", "global" + i));
+      ar.add(new JsonObject()
           .put("scope", scope)
           .put("key", "k" + i)
           .put("userId", userId.toString())
-          .put("value", new JsonObject().put("v", "thevalue"));
-      ar.add(en);
+          .put("value", "user" + i));
     }
+    // same key twice in one batch
+    ar.add(new JsonObject()
+        .put("scope", scope)
+        .put("key", "k0")
+        .put("value", "last"));
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permissionsLacking.encode())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("batchSize", 4)
         .contentType(ContentType.JSON)
         .body(ar.encode())
         .put("/settings/upload")
         .then()
-        .statusCode(403)
-        .contentType(ContentType.TEXT)
-        .body(is("Forbidden"));
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("inserted", is(10))
+        .body("updated", is(1));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("batchSize", 100)
         .contentType(ContentType.JSON)
         .body(ar.encode())
         .put("/settings/upload")
         .then()
-        .statusCode(400)
-        .contentType(ContentType.TEXT)
-        .body(is("Missing header X-Okapi-Permissions"));
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("inserted", is(0))
+        .body("updated", is(2))
+        .body("unchanged", is(9));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.PERMISSIONS, permissionsLacking.encode())
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "key==k0 not userId=\"\"")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(1))
+        .body("items[0].value", is("last"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("batchSize", 0)
         .contentType(ContentType.JSON)
         .body(ar.encode())
         .put("/settings/upload")
         .then()
-        .statusCode(403)
+        .statusCode(400)
         .contentType(ContentType.TEXT)
-        .body(is("Forbidden"));
+        .body(is("batchSize must be between 1 and 10000"));
+  }
 
+  @Test
+  public void testUploadCopy() {
+    String scope = UUID.randomUUID().toString();
+    UUID userId = UUID.randomUUID();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.owner.write." + scope)
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.owner.read." + scope);
+    JsonArray ar = new JsonArray();
+    for (int i = 0; i < 5; i++) {
+      ar.add(new JsonObject()
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("value", "global" + i));
+      ar.add(new JsonObject()
+          .put("scope", scope)
+          .put("key", "k" + i)
+          .put("userId", userId.toString())
+          .put("value", "user" + i));
+    }
+    ar.add(new JsonObject()
+        .put("scope", scope)
+        .put("key", "k0")
+        .put("value", "last"));
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
-        .contentType(ContentType.TEXT)
-        .body("Hello")
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("mode", "copy")
+        .queryParam("batchSize", 3)
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
         .put("/settings/upload")
         .then()
-        .statusCode(400)
-        .contentType(ContentType.TEXT)
-        .body(is("Content-Type must be application/json"));
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("inserted", is(10))
+        .body("updated", is(0));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("mode", "copy")
         .contentType(ContentType.JSON)
-        .body("[{\"a\":\"b\"}]")
+        .body(ar.encode())
         .put("/settings/upload")
         .then()
-        .statusCode(403)
-        .contentType(ContentType.TEXT)
-        .body(is("Forbidden"));
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("inserted", is(0))
+        .body("updated", is(0))
+        .body("unchanged", is(10));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "key==k0 not userId=\"\"")
+        .get("/settings/entries")
+        .then()
+        .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("[{\"a\":]")
+        .body("items", hasSize(1))
+        .body("items[0].value", is("last"));
+
+    // nothing is written if one entry is forbidden
+    ar.add(new JsonObject()
+        .put("scope", scope)
+        .put("key", "new")
+        .put("value", "v"));
+    ar.add(new JsonObject()
+        .put("scope", scope)
+        .put("key", "other")
+        .put("userId", UUID.randomUUID().toString())
+        .put("value", "v"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.USER_ID, userId.toString())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("mode", "copy")
+        .queryParam("batchSize", 1)
+        .contentType(ContentType.JSON)
+        .body(ar.encode())
         .put("/settings/upload")
         .then()
-        .statusCode(400)
-        .contentType(ContentType.TEXT)
-        .body(containsString("Unexpected character"));
+        .statusCode(403);
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
-        .put("/settings/upload")
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("query", "key==new")
+        .get("/settings/entries")
         .then()
-        .statusCode(400)
-        .contentType(ContentType.TEXT)
-        .body(is("Content-Type must be application/json"));
-  }
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(0));
 
-  @Test
-  public void uploadIdMustNotBeSupplied() {
-    String scope = UUID.randomUUID().toString();
-    UUID userId = UUID.randomUUID();
-    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + scope);
-    int no = 2;
-    JsonArray ar = new JsonArray();
-    for (int i = 0; i < no; i++) {
-      JsonObject en = new JsonObject()
-          .put("id", UUID.randomUUID().toString())
-          .put("scope", scope)
-          .put("key", "k" + i)
-          .put("userId", userId.toString())
-          .put("value", "thevalue");
-      ar.add(en);
-    }
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("mode", "fast")
         .contentType(ContentType.JSON)
         .body(ar.encode())
         .put("/settings/upload")
         .then()
         .statusCode(400)
         .contentType(ContentType.TEXT)
-        .body(is("No id must supplied for upload"));
+        .body(is("mode must be batch or copy"));
   }
 
   @Test
-  public void testUploadOK() {
+  public void testLookupSettings() {
     String scope = UUID.randomUUID().toString();
     UUID userId = UUID.randomUUID();
-    JsonArray permOwnerWrite = new JsonArray().add("mod-settings.owner.write." + scope);
-    JsonArray permOwnerRead = new JsonArray().add("mod-settings.owner.read." + scope);
-    int no = 100;
-    JsonArray ar = new JsonArray();
-    for (int i = 0; i < no; i++) {
-      JsonObject en = new JsonObject()
-          .put("scope", scope)
-          .put("key", "k" + i)
-          .put("userId", userId.toString())
-          .put("value", "s".repeat(1000));
-      ar.add(en);
-    }
+    JsonArray permWrite = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.users.write." + scope);
+    JsonArray ar = new JsonArray()
+        .add(new JsonObject().put("scope", scope).put("key", "k1").put("value", "g1"))
+        .add(new JsonObject().put("scope", scope).put("key", "k2").put("value", "g2"))
+        .add(new JsonObject().put("scope", scope).put("key", "k1")
+            .put("userId", userId.toString()).put("value", "u1"));
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
         .contentType(ContentType.JSON)
         .body(ar.encode())
         .put("/settings/upload")
         .then()
         .statusCode(200)
-        .contentType(ContentType.JSON)
-        .body("inserted", is(no))
-        .body("updated", is(0));
+        .body("inserted", is(3));
+
+    JsonObject lookup = new JsonObject().put("keys", new JsonArray()
+        .add(new JsonObject().put("scope", scope).put("key", "k1"))
+        .add(new JsonObject().put("scope", scope).put("key", "k1"))
+        .add(new JsonObject().put("scope", scope).put("key", "k1")
+            .put("userId", userId.toString()))
+        .add(new JsonObject().put("scope", scope).put("key", "k3"))
+        .add(new JsonObject().put("scope", "other").put("key", "k1")));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerWrite.encode())
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read." + scope)
+            .add("mod-settings.users.read." + scope).encode())
         .contentType(ContentType.JSON)
-        .body(ar.encode())
-        .put("/settings/upload")
+        .body(lookup.encode())
+        .post("/settings/entries/_lookup")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("inserted", is(0))
-        .body("updated", is(no));
+        .body("items", hasSize(2))
+        .body("items.value", containsInAnyOrder("g1", "u1"))
+        .body("resultInfo.totalRecords", is(2));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
-        .queryParam("limit", 0)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray()
+            .add("mod-settings.global.read." + scope).encode())
         .contentType(ContentType.JSON)
-        .get("/settings/entries")
+        .body(lookup.encode())
+        .post("/settings/entries/_lookup")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(0))
-        .body("resultInfo.totalRecords", is(no));
+        .body("items", hasSize(1))
+        .body("items[0].value", is("g1"));
 
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
-        .header(XOkapiHeaders.USER_ID, userId.toString())
-        .header(XOkapiHeaders.PERMISSIONS, permOwnerRead.encode())
-        .queryParam("limit", 0)
+        .header(XOkapiHeaders.PERMISSIONS, new JsonArray().encode())
+        .contentType(ContentType.JSON)
+        .body(lookup.encode())
+        .post("/settings/entries/_lookup")
+        .then()
+        .statusCode(403);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("keys", new JsonArray()
+            .add(new JsonObject().put("scope", scope))).encode())
+        .post("/settings/entries/_lookup")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Each key must have scope and key"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("keys", new JsonArray().add("k1")).encode())
+        .post("/settings/entries/_lookup")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Each key must have scope and key"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
         .contentType(ContentType.JSON)
+        .body(new JsonObject().put("keys", new JsonArray()
+            .add(new JsonObject().put("scope", scope).put("key", "k1")
+                .put("userId", "nouuid"))).encode())
+        .post("/settings/entries/_lookup")
+        .then()
+        .statusCode(400)
+        .contentType(ContentType.TEXT)
+        .body(is("Invalid userId nouuid"));
+  }
+
+  @Test
+  public void testGetSettingsJson() {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope)
+        .add("mod-settings.users.write." + scope)
+        .add("mod-settings.users.read." + scope);
+    JsonObject en1 = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("scope", scope)
+        .put("key", "k1")
+        .put("value", new JsonObject().put("a", new JsonArray().add(1).add("x")).putNull("n"));
+    JsonObject en2 = en1.copy()
+        .put("id", UUID.randomUUID().toString())
+        .put("userId", UUID.randomUUID().toString())
+        .put("value", "\u00e6\"\\");
+    for (JsonObject en : List.of(en1, en2)) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .contentType(ContentType.JSON)
+          .body(en.encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+    String body = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+        .queryParam("after", "")
         .get("/settings/entries")
         .then()
         .statusCode(200)
         .contentType(ContentType.JSON)
-        .body("items", hasSize(0))
-        .body("resultInfo.totalRecords", is(no));
+        .extract().body().asString();
+    JsonArray items = new JsonObject(body).getJsonArray("items");
+    assertThat(items.getJsonObject(0), is(en1));
+    assertThat(items.getJsonObject(1), is(en2));
+  }
+
+  @Test
+  public void testCacheNotify() throws Exception {
+    TenantPgPool pool = TenantPgPool.pool(vertx, TENANT_1);
+    String localeTable = pool.getSchema() + ".locale";
+    String baseUrlTable = pool.getSchema() + ".baseurl";
+    String locale = getField("/locale", "locale");
+    String baseUrl = getField("/base-url", "baseUrl");
+    // plain SQL, so only the notification can invalidate the cached values
+    sql(pool, "UPDATE " + localeTable + " SET locale = 'da-DK'");
+    sql(pool, "UPDATE " + baseUrlTable + " SET baseurl = 'https://notify.example.org'");
+    awaitField("/locale", "locale", "da-DK");
+    awaitField("/base-url", "baseUrl", "https://notify.example.org");
+    sql(pool, "UPDATE " + localeTable + " SET locale = '" + locale + "'");
+    sql(pool, "UPDATE " + baseUrlTable + " SET baseurl = '" + baseUrl + "'");
+    awaitField("/locale", "locale", locale);
+    awaitField("/base-url", "baseUrl", baseUrl);
+
+    String name = "notify-" + UUID.randomUUID();
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get("/tenant-addresses")
+        .then()
+        .statusCode(200);
+    sql(pool, "INSERT INTO " + pool.getSchema() + ".tenant_addresses (id, name, address)"
+        + " VALUES ('" + UUID.randomUUID() + "', '" + name + "', 'a')");
+    long deadline = System.currentTimeMillis() + 10000;
+    List<String> names = getAddressNames();
+    while (!names.contains(name) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+      names = getAddressNames();
+    }
+    assertThat(names, hasItem(name));
+    sql(pool, "DELETE FROM " + pool.getSchema() + ".tenant_addresses WHERE name = '" + name + "'");
+  }
+
+  private static List<String> getAddressNames() {
+    return RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get("/tenant-addresses")
+        .then()
+        .statusCode(200)
+        .extract().path("addresses.name");
+  }
+
+  private static void sql(TenantPgPool pool, String sql) throws Exception {
+    pool.query(sql).execute()
+        .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+  }
+
+  private static String getField(String path, String field) {
+    return RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get(path)
+        .then()
+        .statusCode(200)
+        .extract().path(field);
+  }
+
+  /**
+   * Wait for a field of a GET response to get a value; well within the cache TTL.
+   */
+  private static void awaitField(String path, String field, String expected)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    String value = getField(path, field);
+    while (!expected.equals(value) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+      value = getField(path, field);
+    }
+    assertThat(value, is(expected));
+  }
+
+  private static void postTenantParameters(JsonArray parameters) {
+    String id = RestAssured.given()
+        .baseUri(MODULE_URL)
+        .header(XOkapiHeaders.URL, OKAPI_URL)
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .contentType(ContentType.JSON)
+        .body(new JsonObject()
+            .put("module_to", MODULE_ID)
+            .put("parameters", parameters)
+            .encode())
+        .post("/_/tenant")
+        .then()
+        .statusCode(201)
+        .extract().path("id");
+
+    RestAssured.given()
+        .baseUri(MODULE_URL)
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get("/_/tenant/" + id + "?wait=30000")
+        .then()
+        .statusCode(200)
+        .body("complete", is(true));
+  }
+
+  private static List<String> trigramIndexes(TenantPgPool pool) throws Exception {
+    List<String> names = new ArrayList<>();
+    pool.preparedQuery("SELECT indexname FROM pg_indexes"
+            + " WHERE schemaname = $1 AND indexname LIKE '%_trgm' ORDER BY indexname")
+        .execute(Tuple.of(pool.getSchema()))
+        .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS)
+        .forEach((Row row) -> names.add(row.getString("indexname")));
+    return names;
+  }
+
+  @Test
+  public void testTrigramIndex() throws Exception {
+    String scope = UUID.randomUUID().toString();
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.write." + scope)
+        .add("mod-settings.global.read." + scope);
+    for (String key : List.of("afoob", "foo", "fo-o", "bar")) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .contentType(ContentType.JSON)
+          .body(new JsonObject()
+              .put("id", UUID.randomUUID().toString())
+              .put("scope", scope)
+              .put("key", key)
+              .put("value", "v")
+              .encode())
+          .post("/settings/entries")
+          .then()
+          .statusCode(204);
+    }
+    String street = "street-" + UUID.randomUUID();
+    String avenue = "avenue-" + UUID.randomUUID();
+    for (String name : List.of(street, avenue)) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.USER_ID, UUID.randomUUID().toString())
+          .contentType(ContentType.JSON)
+          .body(new JsonObject().put("name", name).put("address", "Main " + name).encode())
+          .post("/tenant-addresses")
+          .then()
+          .statusCode(201);
+    }
+
+    TenantPgPool pool = TenantPgPool.pool(vertx, TENANT_1);
+    for (boolean create : List.of(true, false)) {
+      postTenantParameters(new JsonArray()
+          .add(new JsonObject().put("key", "trigramIndex").put("value", Boolean.toString(create))));
+      assertThat(trigramIndexes(pool), is(create
+          ? List.of("settings_key_trgm", "tenant_addresses_address_trgm") : List.of()));
+
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, perms.encode())
+          .queryParam("query", "scope==" + scope + " and key=*foo* sortBy key")
+          .get("/settings/entries")
+          .then()
+          .statusCode(200)
+          .body("items.key", contains("afoob", "foo"));
+
+      List<String> names = RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .queryParam("query", "address=*street*")
+          .queryParam("limit", 1000)
+          .get("/tenant-addresses")
+          .then()
+          .statusCode(200)
+          .extract().path("addresses.name");
+      assertThat(names, hasItem(street));
+      assertThat(names, not(hasItem(avenue)));
+    }
   }
 }
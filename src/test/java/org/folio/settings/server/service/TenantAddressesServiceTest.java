@@ -7,6 +7,7 @@ import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 import io.restassured.RestAssured;
 import io.vertx.core.Future;
@@ -258,6 +259,49 @@ class TenantAddressesServiceTest implements TestContainersSupport {
         .body("addresses.name", hasItems(name1, name2));
   }
 
+  @Test
+  void getTenantAddressesTotalRecords() {
+    var name = uniqueName("address");
+    createAddress(name, "addr-total-full");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT)
+        .get("/tenant-addresses?query=name==" + name)
+        .then()
+        .statusCode(200)
+        .body("resultInfo.totalRecords", is(1));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT)
+        .get("/tenant-addresses?totalRecords=exact&query=name==" + name)
+        .then()
+        .statusCode(200)
+        .body("resultInfo.totalRecords", is(1));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT)
+        .get("/tenant-addresses?totalRecords=estimated&query=name==" + name)
+        .then()
+        .statusCode(200)
+        .body("addresses.size()", is(1))
+        .body("resultInfo.totalRecords", notNullValue());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT)
+        .get("/tenant-addresses?totalRecords=none&query=name==" + name)
+        .then()
+        .statusCode(200)
+        .body("addresses.size()", is(1))
+        .body("resultInfo.totalRecords", nullValue());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT)
+        .get("/tenant-addresses?totalRecords=maybe")
+        .then()
+        .statusCode(400)
+        .body(is("totalRecords must be exact, estimated or none"));
+  }
+
   // --- filter tests --------------------------------------------------------
 
   static Stream<String> filterQueries() {
@@ -0,0 +1,80 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+class BatcherTest {
+
+  static Future<Map<Integer, String>> load(List<List<Integer>> calls, List<Integer> keys) {
+    calls.add(keys);
+    Map<Integer, String> map = new HashMap<>();
+    keys.stream().filter(k -> k > 0).forEach(k -> map.put(k, "v" + k));
+    return Future.succeededFuture(map);
+  }
+
+  @Test
+  void window(Vertx vertx, VertxTestContext vtc) {
+    var batcher = new Batcher<Integer, String>(10, 100);
+    List<List<Integer>> calls = new ArrayList<>();
+    vertx.runOnContext(x -> Future.all(
+            batcher.load(1, keys -> load(calls, keys)),
+            batcher.load(2, keys -> load(calls, keys)),
+            batcher.load(1, keys -> load(calls, keys)),
+            batcher.load(-1, keys -> load(calls, keys)))
+        .onComplete(vtc.succeeding(all -> vtc.verify(() -> {
+          assertThat(all.resultAt(0), is("v1"));
+          assertThat(all.resultAt(1), is("v2"));
+          assertThat(all.resultAt(2), is("v1"));
+          assertThat(all.resultAt(3), is(nullValue()));
+          assertThat(calls, contains(List.of(1, 2, -1)));
+          vtc.completeNow();
+        }))));
+  }
+
+  @Test
+  void maxSize(Vertx vertx, VertxTestContext vtc) {
+    var batcher = new Batcher<Integer, String>(10000, 2);
+    List<List<Integer>> calls = new ArrayList<>();
+    vertx.runOnContext(x -> Future.all(
+            batcher.load(1, keys -> load(calls, keys)),
+            batcher.load(2, keys -> load(calls, keys)),
+            batcher.load(3, keys -> load(calls, keys)),
+            batcher.load(4, keys -> load(calls, keys)))
+        .onComplete(vtc.succeeding(all -> vtc.verify(() -> {
+          assertThat(calls, contains(List.of(1, 2), List.of(3, 4)));
+          vtc.completeNow();
+        }))));
+  }
+
+  @Test
+  void failure(Vertx vertx, VertxTestContext vtc) {
+    var batcher = new Batcher<Integer, String>(1, 100);
+    vertx.runOnContext(x -> batcher.load(1, keys -> Future.failedFuture("down"))
+        .onComplete(vtc.failing(e -> vtc.verify(() -> {
+          assertThat(e.getMessage(), is("down"));
+          vtc.completeNow();
+        }))));
+  }
+
+  @Test
+  void noContext() {
+    var batcher = new Batcher<Integer, String>(10000, 100);
+    List<List<Integer>> calls = new ArrayList<>();
+    assertThat(batcher.load(1, keys -> load(calls, keys)).result(), is("v1"));
+    assertThat(calls, contains(List.of(1)));
+  }
+}
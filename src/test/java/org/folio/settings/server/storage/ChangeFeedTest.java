@@ -0,0 +1,54 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import java.util.List;
+import org.folio.settings.server.TestContainersSupport;
+import org.folio.tlib.postgres.TenantPgPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ChangeFeedTest implements TestContainersSupport {
+
+  @BeforeAll
+  static void beforeAll() {
+    TenantPgPool.setModule("mod-settings");
+  }
+
+  @AfterAll
+  static void afterAll(VertxTestContext vtc) {
+    ChangeFeed.close()
+        .compose(x -> PgNotifications.close())
+        .onComplete(vtc.succeedingThenComplete());
+  }
+
+  @Test
+  void firstFetchFails(Vertx vertx, VertxTestContext vtc) {
+    TenantPgPool pool = TenantPgPool.pool(vertx, "changefeed");
+    String changesTable = pool.getSchema() + ".settings_changes";
+    // the change log does not exist yet, so the first fetch fails
+    ChangeFeed.subscribe(vertx, pool, changesTable, change -> vtc.failNow("unexpected"))
+        .compose(x -> Future.<Void>failedFuture("subscribe should fail"),
+            e -> pool.execute(List.of(
+                "CREATE SCHEMA IF NOT EXISTS " + pool.getSchema(),
+                "CREATE TABLE IF NOT EXISTS " + changesTable
+                    + " (seq bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY,"
+                    + " op VARCHAR NOT NULL, id uuid NOT NULL, scope VARCHAR NOT NULL,"
+                    + " key VARCHAR NOT NULL, userId uuid)")))
+        // a new subscriber starts over and gets changes
+        .compose(x -> ChangeFeed.subscribe(vertx, pool, changesTable, change -> vtc.verify(() -> {
+          assertThat(change.getString("key"), is("k1"));
+          vtc.completeNow();
+        })))
+        .compose(x -> pool.query("INSERT INTO " + changesTable + " (op, id, scope, key)"
+            + " VALUES ('INSERT', gen_random_uuid(), 's1', 'k1')").execute())
+        .compose(x -> pool.query("SELECT pg_notify('" + ChangeFeed.CHANNEL + "', '"
+            + pool.getSchema() + "')").execute())
+        .onFailure(vtc::failNow);
+  }
+}
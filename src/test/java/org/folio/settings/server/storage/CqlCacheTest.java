@@ -0,0 +1,50 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CqlCacheTest {
+
+  static PgCqlDefinition definition() {
+    var definition = PgCqlDefinition.create();
+    definition.addField("key", new PgCqlFieldText().withExact());
+    return definition;
+  }
+
+  @Test
+  void hitsAndMisses() {
+    var cache = new CqlCache(definition());
+    var t1 = cache.translate("key==a sortBy key");
+    assertThat(t1.where(), is(not(nullValue())));
+    assertThat(t1.orderBy(), is(not(nullValue())));
+    assertThat(cache.translate("key==a sortBy key"), is(sameInstance(t1)));
+    assertThat(cache.translate(null).where(), is(nullValue()));
+    assertThat(cache.getHits(), is(1L));
+    assertThat(cache.getMisses(), is(2L));
+  }
+
+  @Test
+  void bounded() {
+    var cache = new CqlCache(definition(), 1);
+    var t1 = cache.translate("key==a");
+    cache.translate("key==b");
+    assertThat(cache.translate("key==a"), is(not(sameInstance(t1))));
+    assertThat(cache.getMisses(), is(3L));
+  }
+
+  @Test
+  void invalidNotCached() {
+    var cache = new CqlCache(definition());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> cache.translate("foo==a"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> cache.translate("foo==a"));
+    assertThat(cache.getMisses(), is(2L));
+  }
+}
@@ -0,0 +1,61 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import io.vertx.sqlclient.Tuple;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class EntryCursorTest {
+
+  @Test
+  void encodeDecodeGlobal() {
+    var cursor = new EntryCursor("s1", "k\"1", null, UUID.randomUUID());
+    assertThat(EntryCursor.decode(cursor.encode()), is(cursor));
+  }
+
+  @Test
+  void encodeDecodeUser() {
+    var cursor = new EntryCursor("s1", "k1", UUID.randomUUID(), UUID.randomUUID());
+    assertThat(EntryCursor.decode(cursor.encode()), is(cursor));
+  }
+
+  @Test
+  void decodeEmpty() {
+    assertThat(EntryCursor.decode(""), is(nullValue()));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"x", "!!", "WyJhIl0", "WzEsMiwzLDRd"})
+  void decodeInvalid(String token) {
+    var e = Assertions.assertThrows(UserException.class, () -> EntryCursor.decode(token));
+    assertThat(e.getMessage(), is("Invalid after token: " + token));
+  }
+
+  @Test
+  void seekClauseGlobal() {
+    var id = UUID.randomUUID();
+    var args = Tuple.tuple();
+    var clause = new EntryCursor("s1", "k1", null, id).seekClause(args);
+    assertThat(clause, is("(scope, key) >= ($1, $2) AND ((scope, key) > ($1, $2)"
+        + " OR userid IS NOT NULL OR id > $3)"));
+    assertThat(args.size(), is(3));
+    assertThat(args.getUUID(2), is(id));
+  }
+
+  @Test
+  void seekClauseUser() {
+    var userId = UUID.randomUUID();
+    var args = Tuple.of("x");
+    var clause = new EntryCursor("s1", "k1", userId, UUID.randomUUID()).seekClause(args);
+    assertThat(clause, is("(scope, key) >= ($2, $3) AND ((scope, key) > ($2, $3)"
+        + " OR userid > $4 OR (userid = $4 AND id > $5))"));
+    assertThat(args.size(), is(5));
+    assertThat(args.getUUID(3), is(userId));
+  }
+}
@@ -0,0 +1,80 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.folio.tlib.postgres.PgCqlDefinition;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldAlwaysMatches;
+import org.folio.tlib.postgres.cqlfield.PgCqlFieldText;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class JsonbCqlTest {
+
+  static PgCqlDefinition definition() {
+    var definition = PgCqlDefinition.create();
+    definition.addField("cql.allRecords", new PgCqlFieldAlwaysMatches());
+    definition.addField("key", new PgCqlFieldText().withExact());
+    return definition;
+  }
+
+  @Test
+  void withoutColumnTerms() {
+    var definition = definition();
+    var expected = definition.parse("key==a sortBy key");
+    var translation = JsonbCql.translate(definition, "value", "key==a sortBy key");
+    assertThat(translation.where(), is(expected.getWhereClause()));
+    assertThat(translation.orderBy(), is(expected.getOrderByClause()));
+    assertThat(JsonbCql.translate(definition, "value", null).where(), is(nullValue()));
+  }
+
+  @Test
+  void string() {
+    var translation = JsonbCql.translate(definition(), "value", "value.a.b==x");
+    assertThat(translation.where(), is("(value @> '{\"value\":{\"a\":{\"b\":\"x\"}}}')"));
+    assertThat(translation.orderBy(), is(nullValue()));
+  }
+
+  @Test
+  void typed() {
+    assertThat(JsonbCql.translate(definition(), "value", "value.enabled=true").where(),
+        is("(value @> '{\"value\":{\"enabled\":\"true\"}}'"
+            + " OR value @> '{\"value\":{\"enabled\":true}}')"));
+    assertThat(JsonbCql.translate(definition(), "value", "value.n<>3").where(),
+        is("NOT (value @> '{\"value\":{\"n\":\"3\"}}' OR value @> '{\"value\":{\"n\":3}}')"));
+  }
+
+  @Test
+  void quote() {
+    assertThat(JsonbCql.translate(definition(), "value", "value=\"it's\"").where(),
+        is("(value @> '{\"value\":\"it''s\"}')"));
+  }
+
+  @Test
+  void combined() {
+    var definition = definition();
+    var translation = JsonbCql.translate(definition, "value",
+        "key==a and value.b==c sortBy key/sort.descending");
+    assertThat(translation.where(), is("(" + definition.parse("key==a").getWhereClause()
+        + " AND (value @> '{\"value\":{\"b\":\"c\"}}'))"));
+    assertThat(translation.orderBy(),
+        is(definition.parse("key==a sortBy key/sort.descending").getOrderByClause()));
+    assertThat(JsonbCql.translate(definition, "value", "value.b==c or value.b==d").where(),
+        containsString(" OR "));
+    assertThat(JsonbCql.translate(definition, "value", "value.b==c not value.b==d").where(),
+        containsString(" AND NOT "));
+  }
+
+  @Test
+  void invalid() {
+    var definition = definition();
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> JsonbCql.translate(definition, "value", "value.a>1"));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> JsonbCql.translate(definition, "value", "value..a=1"));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> JsonbCql.translate(definition, "value", "value.a=1 and"));
+  }
+}
@@ -0,0 +1,76 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import java.util.UUID;
+import org.folio.settings.server.data.Entry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PermissionIndexTest {
+
+  @Test
+  void bothForms() {
+    var index = PermissionIndex.of(new JsonArray()
+        .add("mod-settings.global.read.s1")
+        .add("mod-settings.users.s1.write")
+        .add("mod-settings.owner.write.s2.x")
+        .add("mod-settings.owner.s2.x.read"));
+    assertThat(index.rights("s1"), is(PermissionIndex.GLOBAL_READ | PermissionIndex.USERS_WRITE));
+    assertThat(index.rights("s2.x"), is(PermissionIndex.OWNER_READ | PermissionIndex.OWNER_WRITE));
+    assertThat(index.rights("s3"), is(0));
+    assertThat(index.scopes(PermissionIndex.OWNER_READ), arrayContaining("s2.x"));
+  }
+
+  @Test
+  void ignored() {
+    var index = PermissionIndex.of(new JsonArray()
+        .add(1)
+        .add("other.global.read.s1")
+        .add("mod-settings.")
+        .add("mod-settings.global")
+        .add("mod-settings.global.read")
+        .add("mod-settings.global.read.")
+        .add("mod-settings.x.read.s1")
+        .add("mod-settings.global.s1.x"));
+    assertThat(index.scopes(0x3f), is(emptyArray()));
+  }
+
+  @Test
+  void fromHeaderCached() {
+    String header = new JsonArray().add("mod-settings.global.read." + UUID.randomUUID()).encode();
+    var index = PermissionIndex.fromHeader(header);
+    assertThat(PermissionIndex.fromHeader(new String(header)), is(sameInstance(index)));
+  }
+
+  @Test
+  void fromHeaderInvalid() {
+    Assertions.assertThrows(DecodeException.class, () -> PermissionIndex.fromHeader("["));
+  }
+
+  @Test
+  void checkDesiredPermissions() {
+    UUID me = UUID.randomUUID();
+    var index = PermissionIndex.of(new JsonArray()
+        .add("mod-settings.global.read.s1")
+        .add("mod-settings.owner.s1.write"));
+    var global = new Entry();
+    global.setScope("s1");
+    assertThat(SettingsStorage.checkDesiredPermissions("read", index, global, me), is(true));
+    assertThat(SettingsStorage.checkDesiredPermissions("write", index, global, me), is(false));
+    var mine = new Entry();
+    mine.setScope("s1");
+    mine.setUserId(me);
+    assertThat(SettingsStorage.checkDesiredPermissions("read", index, mine, me), is(false));
+    assertThat(SettingsStorage.checkDesiredPermissions("write", index, mine, me), is(true));
+    assertThat(SettingsStorage.checkDesiredPermissions("write", index, mine, null), is(false));
+    assertThat(SettingsStorage.checkDesiredPermissions("write", index, mine, UUID.randomUUID()),
+        is(false));
+  }
+}
@@ -0,0 +1,48 @@
+package org.folio.settings.server.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import io.vertx.core.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ReadCacheTest {
+
+  @AfterEach
+  void clear() {
+    ReadCache.clear();
+  }
+
+  @Test
+  void getAndInvalidate() {
+    var loads = new AtomicInteger();
+    assertThat(ReadCache.get("s.t", "", () -> Future.succeededFuture(loads.incrementAndGet()))
+        .result(), is(1));
+    assertThat(ReadCache.get("s.t", "", () -> Future.succeededFuture(loads.incrementAndGet()))
+        .result(), is(1));
+    ReadCache.invalidate("s.other");
+    assertThat(ReadCache.get("s.t", "", () -> Future.succeededFuture(loads.incrementAndGet()))
+        .result(), is(1));
+    ReadCache.invalidate("s.t");
+    assertThat(ReadCache.get("s.t", "", () -> Future.succeededFuture(loads.incrementAndGet()))
+        .result(), is(2));
+  }
+
+  @Test
+  void keysPerTable() {
+    ReadCache.get("s.t", "a", () -> Future.succeededFuture("a"));
+    ReadCache.get("s.t2", "a", () -> Future.succeededFuture("b"));
+    assertThat(ReadCache.get("s.t", "a", () -> Future.succeededFuture("c")).result(), is("a"));
+    ReadCache.invalidate("s.t");
+    assertThat(ReadCache.get("s.t", "a", () -> Future.succeededFuture("c")).result(), is("c"));
+    assertThat(ReadCache.get("s.t2", "a", () -> Future.succeededFuture("c")).result(), is("b"));
+  }
+
+  @Test
+  void failureNotCached() {
+    ReadCache.get("s.t", "", () -> Future.failedFuture("down"));
+    assertThat(ReadCache.get("s.t", "", () -> Future.succeededFuture("up")).result(), is("up"));
+  }
+}
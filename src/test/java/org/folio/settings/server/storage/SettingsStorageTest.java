@@ -1,17 +1,26 @@
 package org.folio.settings.server.storage;
 
 import io.vertx.core.json.JsonArray;
+import io.vertx.sqlclient.Tuple;
 import java.util.UUID;
 import org.junit.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.contains;
-import static org.hamcrest.Matchers.containsInAnyOrder;
-import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class SettingsStorageTest {
 
+  static final String LIMIT_CLAUSE = "(userId IS NULL AND scope = ANY($1))"
+      + " OR (userId IS NOT NULL AND scope = ANY($2))"
+      + " OR (userId = $3 AND scope = ANY($4))";
+
+  static String getLimits(JsonArray perms, UUID currentUser, Tuple args) {
+    return SettingsStorage.getReadLimitClause(PermissionIndex.of(perms), currentUser, args);
+  }
+
   @Test
   public void getLimitsIgnoredPermissions() {
     JsonArray perms = new JsonArray()
@@ -27,7 +36,9 @@ public class SettingsStorageTest {
         .add("mod-settings.global.read.")
         .add("mod-settings.x.read.scope")
         .add("mod-settings.others.read.scope");
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, null), is(empty()));
+    Tuple args = Tuple.tuple();
+    assertThat(getLimits(perms, null, args), is(nullValue()));
+    assertThat(args.size(), is(0));
   }
 
   @Test
@@ -36,63 +47,110 @@ public class SettingsStorageTest {
         .add("a")
         .add("mod-settings.global.write.s1")
         .add("mod-settings.global.read.s1.t1");
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, null),
-        contains("(scope == \"s1.t1\" not userId = \"\")"));
+    Tuple args = Tuple.tuple();
+    assertThat(getLimits(perms, null, args), is(LIMIT_CLAUSE));
+    assertThat(args.getArrayOfStrings(0), arrayContaining("s1.t1"));
+    assertThat(args.getArrayOfStrings(1), is(emptyArray()));
+    assertThat(args.getUUID(2), is(nullValue()));
+    assertThat(args.getArrayOfStrings(3), is(emptyArray()));
+  }
+
+  @Test
+  public void getLimitsWithoutOwnerIgnoresUser() {
+    JsonArray perms = new JsonArray()
+        .add("mod-settings.global.read.s1")
+        .add("mod-settings.users.read.s2");
+    Tuple args1 = Tuple.tuple();
+    Tuple args2 = Tuple.tuple();
+    assertThat(getLimits(perms, UUID.randomUUID(), args1), is(LIMIT_CLAUSE));
+    assertThat(getLimits(perms, UUID.randomUUID(), args2), is(LIMIT_CLAUSE));
+    assertThat(args1.getUUID(2), is(nullValue()));
+    assertThat(args2.getUUID(2), is(nullValue()));
   }
 
   @Test
   public void getLimitsFromUsers() {
     JsonArray perms = new JsonArray()
         .add("mod-settings.users.read.s1");
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, null),
-        contains("(scope == \"s1\" and userId = \"\")"));
+    Tuple args = Tuple.tuple();
+    assertThat(getLimits(perms, null, args), is(LIMIT_CLAUSE));
+    assertThat(args.getArrayOfStrings(0), is(emptyArray()));
+    assertThat(args.getArrayOfStrings(1), arrayContaining("s1"));
+    assertThat(args.getArrayOfStrings(3), is(emptyArray()));
   }
 
   @Test
   public void getLimitsFromOwn() {
     JsonArray perms = new JsonArray()
         .add("mod-settings.owner.read.s1");
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, null), is(empty()));
+    assertThat(getLimits(perms, null, Tuple.tuple()), is(nullValue()));
     UUID myId = UUID.randomUUID();
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, myId),
-        contains("(scope == \"s1\" and userId == \"" + myId + "\")"));
+    Tuple args = Tuple.tuple();
+    assertThat(getLimits(perms, myId, args), is(LIMIT_CLAUSE));
+    assertThat(args.getArrayOfStrings(0), is(emptyArray()));
+    assertThat(args.getArrayOfStrings(1), is(emptyArray()));
+    assertThat(args.getUUID(2), is(myId));
+    assertThat(args.getArrayOfStrings(3), arrayContaining("s1"));
   }
 
   @Test
-  public void getLimitsMix1() {
+  public void getLimitsMix() {
     JsonArray perms = new JsonArray()
         .add("mod-settings.owner.read.s1")
-        .add("mod-settings.global.read.s2");
+        .add("mod-settings.global.read.s2")
+        .add("mod-settings.global.s1.read")
+        .add("mod-settings.users.read.s3")
+        .add("mod-settings.global.read.s3");
     UUID myId = UUID.randomUUID();
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, myId),
-        containsInAnyOrder(
-            "(scope == \"s1\" and userId == \"" + myId + "\")",
-            "(scope == \"s2\" not userId = \"\")"
-        ));
+    Tuple args = Tuple.tuple();
+    assertThat(getLimits(perms, myId, args), is(LIMIT_CLAUSE));
+    assertThat(args.getArrayOfStrings(0), arrayContaining("s1", "s2", "s3"));
+    assertThat(args.getArrayOfStrings(1), arrayContaining("s3"));
+    assertThat(args.getUUID(2), is(myId));
+    assertThat(args.getArrayOfStrings(3), arrayContaining("s1"));
   }
 
   @Test
-  public void getLimitsMix2() {
+  public void getWriteLimits() {
     JsonArray perms = new JsonArray()
-        .add("mod-settings.owner.read.s1")
-        .add("mod-settings.global.read.s1");
+        .add("mod-settings.owner.write.s1")
+        .add("mod-settings.global.read.s2")
+        .add("mod-settings.users.s3.write");
     UUID myId = UUID.randomUUID();
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, myId),
-        contains(
-            "(scope == \"s1\" not userId = \"\")",
-            "(scope == \"s1\" and userId == \"" + myId + "\")"));
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, null),
-        contains(
-            "(scope == \"s1\" not userId = \"\")"));
+    Tuple args = Tuple.tuple();
+    assertThat(SettingsStorage.getWriteLimitClause(PermissionIndex.of(perms), myId, args),
+        is(LIMIT_CLAUSE));
+    assertThat(args.getArrayOfStrings(0), is(emptyArray()));
+    assertThat(args.getArrayOfStrings(1), arrayContaining("s3"));
+    assertThat(args.getUUID(2), is(myId));
+    assertThat(args.getArrayOfStrings(3), arrayContaining("s1"));
+    perms = new JsonArray().add("mod-settings.global.read.s2");
+    assertThat(SettingsStorage.getWriteLimitClause(PermissionIndex.of(perms), myId, Tuple.tuple()),
+        is(nullValue()));
   }
 
   @Test
-  public void getLimitsMix3() {
+  public void getLimitsOffset() {
     JsonArray perms = new JsonArray()
-        .add("mod-settings.users.read.s1")
-        .add("mod-settings.global.read.s1");
-    assertThat(SettingsStorage.getCqlLimitPermissions(perms, null),
-        contains("scope == \"s1\""));
+        .add("mod-settings.users.read.s1");
+    Tuple args = Tuple.of("x");
+    assertThat(getLimits(perms, null, args), is(
+        "(userId IS NULL AND scope = ANY($2))"
+            + " OR (userId IS NOT NULL AND scope = ANY($3))"
+            + " OR (userId = $4 AND scope = ANY($5))"));
+    assertThat(args.size(), is(5));
+  }
+
+  @Test
+  public void prefixEnd() {
+    assertThat(SettingsStorage.prefixEnd("a"), is("b"));
+    assertThat(SettingsStorage.prefixEnd("ab."), is("ab/"));
+    assertThat(SettingsStorage.prefixEnd("a\u007f"), is("a\u0080"));
+    assertThat(SettingsStorage.prefixEnd("a\ud7fe"), is("a\ud7ff"));
+    // the next char would be a lone surrogate
+    assertThat(SettingsStorage.prefixEnd("a\ud7ff"), is(nullValue()));
+    assertThat(SettingsStorage.prefixEnd("a\ud83d\ude00"), is(nullValue()));
+    assertThat(SettingsStorage.prefixEnd("a\uffff"), is(nullValue()));
   }
 
 }